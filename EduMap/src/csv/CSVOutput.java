@@ -0,0 +1,238 @@
+package csv;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes a CSV file by encoding its text straight into a direct byte buffer, which is written to the file's channel each time it fills,
+ * or through gzip if the file is compressed. Each thread reuses its buffers for every file it writes, one file at a time. Cells are
+ * quoted as they are encoded, so a value is never copied to be quoted. Like any encoder of its charset, the file gets at most one byte
+ * order mark, at its start
+ *
+ * @author Jeremy Gilreath
+ *
+ */
+public class CSVOutput extends Writer {
+	private static final int					BUFFER_SIZE		= 64 * 1024;
+	private static final String					LINE_SEPARATOR	= System.lineSeparator();
+
+	// each thread's buffers, taken by the file it is writing and handed back when that file is closed
+	private static final ThreadLocal<Buffers>	buffers			= new ThreadLocal<Buffers>() {
+		@Override
+		protected Buffers initialValue() {
+			return new Buffers();
+		}
+	};
+
+	private final FileChannel					channel;
+	private final OutputStream					gzip;
+	private final CharsetEncoder				encoder;
+	private final Buffers						reused;
+	private final CharBuffer					chars;
+	private final ByteBuffer					bytes;
+	private long								written;
+	private boolean								closed;
+
+	/**
+	 * The buffers a file is encoded through, and an array for handing the encoded bytes to gzip
+	 */
+	private static class Buffers {
+		private final CharBuffer	chars	= CharBuffer.allocate(BUFFER_SIZE / 2);
+		private final ByteBuffer	bytes	= ByteBuffer.allocateDirect(BUFFER_SIZE);
+		private final byte[]		array	= new byte[BUFFER_SIZE];
+	}
+
+	/**
+	 * Creates the file, replacing any that is there
+	 *
+	 * @param path
+	 * @param charset
+	 * @param gzipping
+	 *            whether to compress the file as it is written
+	 * @throws IOException
+	 */
+	public CSVOutput(Path path, Charset charset, boolean gzipping) throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE);
+		gzip = gzipping ? new GZIPOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE) : null;
+		encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		// another file opened on this thread before this one is closed gets buffers of its own
+		reused = buffers.get();
+		buffers.remove();
+		chars = reused.chars;
+		bytes = reused.bytes;
+		chars.clear();
+		bytes.clear();
+	}
+
+	/**
+	 * Writes a value in quotes, with each of its quotes made into two apostrophes so it stays in one cell
+	 *
+	 * @param value
+	 * @throws IOException
+	 */
+	public void writeCell(String value) throws IOException {
+		put('"');
+		char c;
+		for (int i = 0; i < value.length(); i++) {
+			c = value.charAt(i);
+			if (c == '"') {
+				put('\'');
+				put('\'');
+			} else {
+				put(c);
+			}
+		}
+		put('"');
+	}
+
+	/**
+	 * Writes the values as a CSV line, without a line separator
+	 *
+	 * @param values
+	 * @throws IOException
+	 */
+	public void writeLine(List<String> values) throws IOException {
+		for (int v = 0; v < values.size(); v++) {
+			if (v != 0) put(',');
+			writeCell(values.get(v));
+		}
+	}
+
+	/**
+	 * Writes a line separator
+	 *
+	 * @throws IOException
+	 */
+	public void newLine() throws IOException {
+		write(LINE_SEPARATOR);
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+		put((char) c);
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		for (int i = off; i < off + len; i++) {
+			put(cbuf[i]);
+		}
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		for (int i = off; i < off + len; i++) {
+			put(str.charAt(i));
+		}
+	}
+
+	/**
+	 * Adds a char to the ones waiting to be encoded
+	 *
+	 * @param c
+	 * @throws IOException
+	 */
+	private void put(char c) throws IOException {
+		ensureOpen();
+		if (!chars.hasRemaining()) encode(false);
+		chars.put(c);
+	}
+
+	/**
+	 * Throws if the file has been closed, since its buffers have been handed back for the next file on this thread
+	 *
+	 * @throws IOException
+	 */
+	private void ensureOpen() throws IOException {
+		if (closed) throw new IOException("CSV file already closed");
+	}
+
+	/**
+	 * Encodes the waiting chars into the byte buffer, draining it whenever it fills. A surrogate pair split across the end is kept for the
+	 * next time
+	 *
+	 * @param endOfInput
+	 * @throws IOException
+	 */
+	private void encode(boolean endOfInput) throws IOException {
+		chars.flip();
+		CoderResult result;
+		do {
+			result = encoder.encode(chars, bytes, endOfInput);
+			if (result.isOverflow()) drain();
+		} while (result.isOverflow());
+		if (endOfInput) {
+			while (encoder.flush(bytes).isOverflow()) {
+				drain();
+			}
+		}
+		chars.compact();
+	}
+
+	/**
+	 * Writes the byte buffer to the file and empties it
+	 *
+	 * @throws IOException
+	 */
+	private void drain() throws IOException {
+		bytes.flip();
+		written += bytes.remaining();
+		if (gzip != null) {
+			int length = bytes.remaining();
+			bytes.get(reused.array, 0, length);
+			gzip.write(reused.array, 0, length);
+		} else {
+			while (bytes.hasRemaining()) {
+				channel.write(bytes);
+			}
+		}
+		bytes.clear();
+	}
+
+	/**
+	 * Encodes the waiting chars and writes them to the file
+	 */
+	@Override
+	public void flush() throws IOException {
+		ensureOpen();
+		encode(false);
+		drain();
+		if (gzip != null) gzip.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) return;
+		closed = true;
+		try {
+			encode(true);
+			drain();
+			if (gzip != null) gzip.close();
+		} finally {
+			channel.close();
+			buffers.set(reused);
+		}
+	}
+
+	/**
+	 * @return the number of bytes encoded, before any compression
+	 */
+	public long getBytesWritten() {
+		return written;
+	}
+}
@@ -0,0 +1,182 @@
+package csv;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads back a CSV file written by CSVWriter, in whichever of its output modes it was written: UTF-16 or UTF-8, gzipped or not. The charset
+ * is found from the byte order mark, and gzip from its magic number, so the file's name doesn't matter
+ *
+ * @author Jeremy Gilreath
+ *
+ */
+public class CSVReader implements Closeable {
+	private static final int		BUFFER_SIZE	= 64 * 1024;
+
+	private final BufferedReader	reader;
+	private final ArrayList<String>	columns;
+	// the char after the last one read, or -1 at the end of the file
+	private int						next;
+
+	/**
+	 * Opens the file and reads its header line
+	 *
+	 * @param path
+	 * @throws IOException
+	 */
+	public CSVReader(Path path) throws IOException {
+		InputStream in = new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE);
+		try {
+			in.mark(2);
+			if (in.read() == 0x1F && in.read() == 0x8B) {
+				in.reset();
+				in = new BufferedInputStream(new GZIPInputStream(in, BUFFER_SIZE), BUFFER_SIZE);
+			} else {
+				in.reset();
+			}
+			reader = new BufferedReader(new InputStreamReader(in, getCharset(in)), BUFFER_SIZE);
+			next = reader.read();
+			columns = readRow();
+		} catch (IOException ioe) {
+			in.close();
+			throw ioe;
+		}
+		if (columns == null) throw new IOException(path + " has no header line!");
+	}
+
+	/**
+	 * Finds the charset from the byte order mark, skipping a UTF-8 one. UTF-16's decoder reads its own
+	 *
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	private static Charset getCharset(InputStream in) throws IOException {
+		in.mark(3);
+		int first = in.read(), second = in.read();
+		if (first == 0xFE && second == 0xFF || first == 0xFF && second == 0xFE) {
+			in.reset();
+			return StandardCharsets.UTF_16;
+		}
+		if (first != 0xEF || second != 0xBB || in.read() != 0xBF) in.reset();
+		return StandardCharsets.UTF_8;
+	}
+
+	/**
+	 * @return the headers of the columns
+	 */
+	public ArrayList<String> getColumns() {
+		return columns;
+	}
+
+	/**
+	 * Reads the next row, padded with " " to the number of columns, or returns null at the end of the file. A quoted value can span
+	 * lines, and two quotes in a row inside one are a quote
+	 *
+	 * @return
+	 * @throws IOException
+	 */
+	public ArrayList<String> readRow() throws IOException {
+		while (next == '\r' || next == '\n') {
+			next = reader.read();
+		}
+		if (next == -1) return null;
+		ArrayList<String> row = new ArrayList<String>(columns == null ? 16 : columns.size());
+		StringBuilder value = new StringBuilder();
+		while (true) {
+			value.setLength(0);
+			if (next == '"') {
+				while (true) {
+					next = reader.read();
+					if (next == -1) break;
+					if (next == '"') {
+						next = reader.read();
+						if (next != '"') break;
+					}
+					value.append((char) next);
+				}
+			} else {
+				while (next != ',' && next != '\r' && next != '\n' && next != -1) {
+					value.append((char) next);
+					next = reader.read();
+				}
+			}
+			row.add(value.toString());
+			if (next != ',') break;
+			next = reader.read();
+		}
+		while (columns != null && row.size() < columns.size()) {
+			row.add(" ");
+		}
+		return row;
+	}
+
+	/**
+	 * Adds every row left to the sink
+	 *
+	 * @param sink
+	 * @return the number of rows added
+	 * @throws IOException
+	 */
+	public int read(RowSink sink) throws IOException {
+		int rows = 0;
+		ArrayList<String> row;
+		while ((row = readRow()) != null) {
+			sink.addRow(row.size() > columns.size() ? row.subList(0, columns.size()) : row);
+			rows++;
+		}
+		return rows;
+	}
+
+	/**
+	 * Returns a folder's CSV files, oldest first by the timestamp each is named with
+	 *
+	 * @param folderPath
+	 * @return
+	 */
+	public static ArrayList<File> getSnapshots(String folderPath) {
+		ArrayList<File> snapshots = new ArrayList<File>();
+		File[] files = new File(folderPath).listFiles();
+		if (files == null) return snapshots;
+		for (File f : files) {
+			if (f.isFile() && (f.getName().endsWith(".csv") || f.getName().endsWith(".csv.gz"))) snapshots.add(f);
+		}
+		Collections.sort(snapshots, new Comparator<File>() {
+
+			@Override
+			public int compare(File f1, File f2) {
+				return f1.getName().compareTo(f2.getName());
+			}
+		});
+		return snapshots;
+	}
+
+	/**
+	 * Returns a folder's newest CSV file, by the timestamp it is named with, or null if it has none
+	 *
+	 * @param folderPath
+	 * @return
+	 */
+	public static File getLatestSnapshot(String folderPath) {
+		ArrayList<File> snapshots = getSnapshots(folderPath);
+		return snapshots.isEmpty() ? null : snapshots.get(snapshots.size() - 1);
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+}
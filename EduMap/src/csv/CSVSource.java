@@ -0,0 +1,47 @@
+package csv;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Anything a state's CSV file can be written from: the headers of its columns, the statistics of their values, and its rows
+ *
+ * @author Jeremy Gilreath
+ *
+ */
+public interface CSVSource {
+	/**
+	 * @return the headers of the columns
+	 */
+	public ArrayList<String> getColumns();
+
+	/**
+	 * @return the statistics of the values in each column
+	 */
+	public ColumnStats getStats();
+
+	/**
+	 * Leaves out every column that has no value in any row
+	 *
+	 * @return the headers of the columns that were left out
+	 */
+	public ArrayList<String> removeEmptyColumns();
+
+	/**
+	 * Writes the header line and then each row on a new line, adding each row to the sink as well, if there is one, in the same pass
+	 *
+	 * @param writer
+	 * @param sink
+	 *            null, or what each row is also added to
+	 * @throws IOException
+	 */
+	public void write(CSVOutput writer, RowSink sink) throws IOException;
+
+	/**
+	 * Adds each row to the sink, in the same order as they are written
+	 *
+	 * @param sink
+	 * @throws IOException
+	 */
+	public void export(RowSink sink) throws IOException;
+}
@@ -1,16 +1,26 @@
 package csv;
 
-import java.io.BufferedWriter;
+import java.io.File;
 import java.io.IOException;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
 
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
@@ -22,16 +32,21 @@ import org.jsoup.nodes.Element;
 public class CSVWriter implements Runnable {
 
 	private static final String[]	TYPES				= { "university", "college", "institute", "seminary", "school" };
+	private static final String[]	EXCLUDED_CLASSES	= { "toctext", "mw-headline", "navbox-group", "reference-text" };
+	private static final String[][]	EXCLUDED_ATTRIBUTES	= { { "href", "/wiki/College" },
+			{ "href", "/wiki/North_Carolina_Community_College_System" }, { "href", "/wiki/University_of_North_Carolina" },
+			{ "dir", "auto" }, { "dir", "ltr" }, { "rel", "nofollow" }, { "color", "#FFDD00" }, { "class", "citation web" },
+			{ "style", "color:white" }						};
 
 	private static final String		STATE_URL_PREFIX	= "http://en.wikipedia.org/wiki/List_of_colleges_and_universities_in_";
-
-	private static final Charset	CHARSET				= StandardCharsets.UTF_16;
+	private static final String		NATIONAL_FOLDER		= "./US/csv/";
 
 	private static boolean[]		instOptions;
 
 	private static boolean			writingDoc;
 	private static boolean			fetchOnlineUpdates;
 	private static boolean			fetchOnlineOnly;
+	private static boolean			fetchIncremental;
 	private static boolean			printingURLs;
 	private static boolean			printingElements;
 	private static boolean			writingElements;
@@ -39,19 +54,48 @@ public class CSVWriter implements Runnable {
 	private static boolean			printingInstitutions;
 	private static boolean			printingCSVColumns;
 	private static boolean			printingCSVRows;
+	private static boolean			virtualThreads;
+	private static boolean			printingBenchmarks;
+	private static boolean			streamingCSV;
+	private static boolean			keepingEmptyColumns;
+	private static boolean			gzippingCSV;
+	private static boolean			exportingColumnar;
+	private static boolean			mergingNational;
 
 	private int						stateNumber;
+	private int						instThreads;
 	private String					url;
 	private String					stateFolder;
 	private String					stateName;
 	private String					stateAbbr;
 
 	/**
-	 * Constructor requires a thread number, folder path for file storage, and URL for parsing
+	 * Constructor requires a thread number, folder path for file storage, and URL for parsing. Institutions within the state are fetched
+	 * and parsed by up to instThreads threads at once
 	 * 
 	 * @param args
 	 */
-	public CSVWriter(int stateNumber, String stateAbbr, String stateName, boolean[] options, boolean[] instOptions) {
+	public CSVWriter(int stateNumber, String stateAbbr, String stateName, int instThreads, boolean[] options,
+			boolean[] instOptions) {
+		setOptions(options);
+		setInstOptions(instOptions);
+		this.stateNumber = stateNumber;
+		this.instThreads = instThreads;
+		this.stateName = stateName.replace("_", " ");
+		this.stateAbbr = stateAbbr;
+		url = STATE_URL_PREFIX + stateName;
+		stateFolder = "./" + stateAbbr + "/";
+
+		System.out.println("Thread " + stateNumber + " for state " + stateName + " constructed.");
+	}
+
+	/**
+	 * Sets the options of the run, indexed as in the GUI's csvoptions. They are static, so every state's thread, and the writers of the
+	 * recovered and national CSV files, share them
+	 * 
+	 * @param options
+	 */
+	public static void setOptions(boolean[] options) {
 		printingElements = options[0];
 		writingElements = options[1];
 		combiningAllFiles = options[2];
@@ -62,15 +106,14 @@ public class CSVWriter implements Runnable {
 		printingURLs = options[7];
 		fetchOnlineOnly = options[8];
 		fetchOnlineUpdates = options[9];
-
-		setInstOptions(instOptions);
-		this.stateNumber = stateNumber;
-		this.stateName = stateName.replace("_", " ");
-		this.stateAbbr = stateAbbr;
-		url = STATE_URL_PREFIX + stateName;
-		stateFolder = "./" + stateAbbr + "/";
-
-		System.out.println("Thread " + stateNumber + " for state " + stateName + " constructed.");
+		virtualThreads = options[10];
+		fetchIncremental = options[11];
+		printingBenchmarks = options[12];
+		streamingCSV = options[13];
+		keepingEmptyColumns = options[14];
+		gzippingCSV = options[15];
+		exportingColumnar = options[16];
+		mergingNational = options[17];
 	}
 
 	@Override
@@ -88,9 +131,13 @@ public class CSVWriter implements Runnable {
 
 		String docFilePath = DOCS_FOLDER + "(ALL).txt";
 		Util.makeFolders(DOCS_FOLDER, stateFolder);
+		if (RowSpill.exists(CSV_FOLDER)) recoverCSV(CSV_FOLDER);
 
-		Document allDoc = Util.getDocument(docFilePath, url, writingDoc, fetchOnlineUpdates, fetchOnlineOnly);
+		Document allDoc = Util.getDocument(docFilePath, url, writingDoc, fetchOnlineUpdates, fetchOnlineOnly,
+				fetchIncremental);
 		if (allDoc != null) {
+			if (printingBenchmarks) ElementIndex.benchmark(allDoc, stateName, "infobox vcard", "geo-dec", "toctext",
+					"mw-headline", "navbox-group", "reference-text", "citation web");
 			ArrayList<Element> uniqueElements = Util.removeDuplicates(getElements(allDoc), "href");
 			if (printingElements) System.out.print("\n----- Unique Elements: " + uniqueElements);
 			if (writingElements) {
@@ -102,33 +149,49 @@ public class CSVWriter implements Runnable {
 			Util.fixURLs(uniqueElements, "href", "/w/index.php?title=");
 			if (printingURLs) Util.printURLs(uniqueElements, "href");
 
-			ArrayList<Institution> institutions = createInstitutions(uniqueElements, stateAbbr, stateName);
-			if (printingInstitutions) System.out.println("\n====================== " + institutions.size()
-					+ " institutions:\n" + institutions.get(17));
+			// when streaming, each institution's row is spilled as soon as it is done and the institution isn't kept
+			RowSpill spill = streamingCSV ? RowSpill.create(CSV_FOLDER, printingCSVRows) : null;
+			ArrayList<Institution> institutions = createInstitutions(uniqueElements, stateAbbr, stateName,
+					instThreads, spill);
+			ResultTable csvTable = null;
+			CSVSource csvSource = spill;
+			if (spill != null) {
+				spill.finish();
+				if (printingInstitutions) System.out.println("\n====================== " + spill.getRowCount()
+						+ " institutions spilled to " + spill + "!");
+			} else {
+				if (printingInstitutions) System.out.println("\n====================== " + institutions.size()
+						+ " institutions:\n" + institutions.get(17));
+				csvTable = getValues(institutions, getColumns(institutions));
+				csvSource = csvTable;
+			}
+			if (!keepingEmptyColumns) removeEmptyColumns(csvSource);
 
-			ArrayList<String> csvColumns = getColumns(institutions);
+			ArrayList<String> csvColumns = csvSource.getColumns();
 			if (printingCSVColumns) {
 				System.out.println("\n====================== " + csvColumns.size() + " total columns:");
 				for (String column : csvColumns) {
 					System.out.print(column + ",");
 				}
 				System.out.println();
+				csvSource.getStats().printStats(csvColumns);
 			}
-			// KEEP TESTING
-			// removeEmptyColumns(institutions, csvColumns);
-
-			ArrayList<String> csvRows = getValues(institutions, csvColumns);
-			if (printingCSVRows) {
-				System.out.println("\n====================== " + csvRows.size() + " total rows:");
-				for (String row : csvRows) {
-					System.out.print(row + "\n");
+			if (printingCSVRows && csvTable != null) {
+				System.out.println("\n====================== " + csvTable.getRowCount() + " total rows:");
+				for (int row = 0; row < csvTable.getRowCount(); row++) {
+					System.out.print(Util.arrayListToString(csvTable.getRow(row)) + "\n");
 				}
+			} else if (printingCSVRows) {
+				// the spilled rows are printed as the CSV file is written
+				System.out.println("\n====================== " + spill.getRowCount() + " total rows:");
 			}
 
 			if (combiningAllFiles) Util.combineAllFiles("(ALL).txt", ROWS_FOLDER, HEAD_FOLDER, VALS_FOLDER, GPS_FOLDER,
 					IP_FOLDER);
 
-			writeCSV(CSV_FOLDER, csvColumns, csvRows);
+			writeCSV(CSV_FOLDER, "", csvSource);
+			if (mergingNational) mergeNational(stateAbbr, stateName, csvSource);
+			if (spill != null) spill.delete();
 
 			System.out.println("Thread for state " + stateNumber + " finished.");
 		}
@@ -146,26 +209,39 @@ public class CSVWriter implements Runnable {
 	 * @return
 	 */
 	private static ArrayList<Element> getElements(Document doc) {
-		// get all elements without checking for duplicates
+		// look up the elements with irrelevant classes and attributes once, instead of checking each one against every element
+		ElementIndex index = new ElementIndex(doc);
+		Set<Element> irrelevant = Collections.newSetFromMap(new IdentityHashMap<Element, Boolean>());
+		for (String className : EXCLUDED_CLASSES) {
+			irrelevant.addAll(index.getElementsByClass(className));
+		}
+		for (String[] attribute : EXCLUDED_ATTRIBUTES) {
+			irrelevant.addAll(index.getElementsByAttributeValue(attribute[0], attribute[1]));
+		}
+
+		// find the elements containing each type in one pass, computing each element's own text once instead of once per type
+		ArrayList<ArrayList<Element>> typed = new ArrayList<ArrayList<Element>>(TYPES.length);
+		for (int i = 0; i < TYPES.length; i++) {
+			typed.add(new ArrayList<Element>());
+		}
+		String ownText;
+		for (Element e : doc.getAllElements()) {
+			if (irrelevant.contains(e)) continue;
+			ownText = e.ownText().toLowerCase(Locale.ENGLISH);
+			for (int i = 0; i < TYPES.length; i++) {
+				if (ownText.contains(TYPES[i])) typed.get(i).add(e);
+			}
+		}
+
+		// get all elements without checking for duplicates, in the same order as looking each type up in turn
 		ArrayList<Element> dupedElements = new ArrayList<Element>();
-		for (String type : TYPES) {
-			for (Element e : doc.getElementsContainingOwnText(type)) {
-				// filter out irrelevant classes
-				if (!e.hasClass("toctext") && !e.hasClass("mw-headline") && !e.hasClass("navbox-group")
-						&& !e.hasClass("reference-text")) {
-					// filter out irrelevant attributes
-					if (!e.attr("href").contains("/wiki/Carnegie_Classification_of_Institutions_of_Higher_Education")
-							&& !e.attr("href").contains("/wiki/List_of_") && !e.attr("href").contains("/wiki/Category")
-							&& !e.attr("href").equals("/wiki/College")
-							&& !e.attr("href").equals("/wiki/North_Carolina_Community_College_System")
-							&& !e.attr("href").equals("/wiki/University_of_North_Carolina")
-							&& !e.attr("dir").equals("auto") && !e.attr("dir").equals("ltr")
-							&& !e.attr("rel").equals("nofollow") && !e.attr("color").equals("#FFDD00")
-							&& !e.attr("class").equals("citation web") && !e.attr("style").equals("color:white")) {
-						// filter out irrelevant text
-						if (e.hasText() && !e.text().contains("List of") && !e.text().equals("School")) dupedElements
-								.add(e);
-					}
+		for (ArrayList<Element> elements : typed) {
+			for (Element e : elements) {
+				// filter out irrelevant attributes
+				if (!e.attr("href").contains("/wiki/Carnegie_Classification_of_Institutions_of_Higher_Education")
+						&& !e.attr("href").contains("/wiki/List_of_") && !e.attr("href").contains("/wiki/Category")) {
+					// filter out irrelevant text
+					if (e.hasText() && !e.text().contains("List of") && !e.text().equals("School")) dupedElements.add(e);
 				}
 			}
 		}
@@ -177,20 +253,41 @@ public class CSVWriter implements Runnable {
 	 * 
 	 * @param elements
 	 * @param stateAbbr
+	 * @param instThreads
+	 * @param spill
+	 *            if not null, each institution is added to it as it is done instead of being returned
 	 * @return
 	 */
 	private static ArrayList<Institution> createInstitutions(ArrayList<Element> elements, String stateAbbr,
-			String stateName) {
-		ArrayList<Institution> institutions = new ArrayList<Institution>();
-		for (Element e : elements) {
-			institutions.add(new Institution(e.text(), e.attr("href"), stateAbbr, stateName, getInstOptions()));
+			String stateName, int instThreads, RowSpill spill) {
+		ArrayList<Institution> institutions;
+		if (ForkJoinTask.inForkJoinPool()) {
+			institutions = createInstitutionsForked(elements, stateAbbr, stateName, spill);
+		} else if (virtualThreads) {
+			institutions = createInstitutionsScoped(elements, stateAbbr, stateName, Util.newVirtualThreadExecutor(),
+					spill);
+		} else if (instThreads > 1 && elements.size() > 1) {
+			institutions = createInstitutionsScoped(elements, stateAbbr, stateName,
+					Executors.newFixedThreadPool(Math.min(elements.size(), instThreads)), spill);
+		} else {
+			institutions = new ArrayList<Institution>();
+			Institution inst;
+			for (int i = 0; i < elements.size(); i++) {
+				inst = new Institution(elements.get(i).text(), elements.get(i).attr("href"), stateAbbr, stateName,
+						getInstOptions());
+				if (spill != null) {
+					spill.add(i, inst);
+				} else {
+					institutions.add(inst);
+				}
+			}
 		}
 
 		Iterator<Institution> instIter = institutions.iterator();
 		ArrayList<String> empty = new ArrayList<String>();
 		while (instIter.hasNext()) {
 			Institution i = instIter.next();
-			if (i.getHeaders() == null) {
+			if (i.getColumnIds() == null) {
 				empty.add(i.toString());
 				instIter.remove();
 			}
@@ -198,6 +295,142 @@ public class CSVWriter implements Runnable {
 		return institutions;
 	}
 
+	/**
+	 * Creates the Institutions as tasks on the given executor, which is scoped to this state and shut down before returning. The first
+	 * institution to fail, or an interrupt of the state's thread, cancels every sibling still running. Institutions keep the same order as
+	 * the elements so the CSV rows match the sequential path
+	 * 
+	 * @param elements
+	 * @param stateAbbr
+	 * @param stateName
+	 * @param executor
+	 * @param spill
+	 * @return
+	 */
+	private static ArrayList<Institution> createInstitutionsScoped(ArrayList<Element> elements,
+			final String stateAbbr, final String stateName, ExecutorService executor, final RowSpill spill) {
+		CompletionService<Institution> scope = new ExecutorCompletionService<Institution>(executor);
+		ArrayList<Future<Institution>> futures = new ArrayList<Future<Institution>>(elements.size());
+		final Institution[] results = new Institution[elements.size()];
+		for (int i = 0; i < elements.size(); i++) {
+			// read the element on this thread so the workers never touch the shared document
+			final int index = i;
+			final String instName = elements.get(i).text();
+			final String instURL = elements.get(i).attr("href");
+			futures.add(scope.submit(new Callable<Institution>() {
+
+				@Override
+				public Institution call() {
+					Institution inst = new Institution(instName, instURL, stateAbbr, stateName, getInstOptions());
+					if (spill == null) {
+						results[index] = inst;
+						return inst;
+					}
+					// the spill has the row, so the institution doesn't need to be kept until the future is taken
+					spill.add(index, inst);
+					return null;
+				}
+			}));
+		}
+		executor.shutdown();
+
+		try {
+			// take them as they complete so a failure is noticed right away rather than in list order
+			for (int i = 0; i < futures.size(); i++) {
+				scope.take().get();
+			}
+		} catch (ExecutionException ee) {
+			cancelAll(futures, executor);
+			System.err.println("Couldn't create an institution for " + stateName + "! Cancelling the rest...");
+			throw new RuntimeException(ee.getCause());
+		} catch (InterruptedException ie) {
+			cancelAll(futures, executor);
+			Thread.currentThread().interrupt();
+			System.err.println("Interrupted while creating the institutions for " + stateName + "!");
+			throw new RuntimeException(ie);
+		}
+
+		ArrayList<Institution> institutions = new ArrayList<Institution>(results.length);
+		if (spill != null) return institutions;
+		for (Institution i : results) {
+			institutions.add(i);
+		}
+		return institutions;
+	}
+
+	/**
+	 * Cancels every outstanding institution task of a state and stops its executor
+	 * 
+	 * @param futures
+	 * @param executor
+	 */
+	private static void cancelAll(ArrayList<Future<Institution>> futures, ExecutorService executor) {
+		for (Future<Institution> future : futures) {
+			future.cancel(true);
+		}
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Creates the Institutions as tasks in the shared ForkJoinPool this state is running in. Idle workers from smaller states steal these
+	 * tasks, so the whole run is balanced by institution rather than by state. Results are joined in list order
+	 * 
+	 * @param elements
+	 * @param stateAbbr
+	 * @param stateName
+	 * @param spill
+	 * @return
+	 */
+	private static ArrayList<Institution> createInstitutionsForked(ArrayList<Element> elements, String stateAbbr,
+			String stateName, RowSpill spill) {
+		ArrayList<InstitutionTask> tasks = new ArrayList<InstitutionTask>(elements.size());
+		for (int i = 0; i < elements.size(); i++) {
+			tasks.add(new InstitutionTask(elements.get(i).text(), elements.get(i).attr("href"), stateAbbr, stateName,
+					i, spill));
+		}
+		ForkJoinTask.invokeAll(tasks);
+
+		ArrayList<Institution> institutions = new ArrayList<Institution>(tasks.size());
+		if (spill != null) return institutions;
+		for (InstitutionTask task : tasks) {
+			institutions.add(task.join());
+		}
+		return institutions;
+	}
+
+	/**
+	 * A single Institution to be fetched and parsed by whichever ForkJoinPool worker gets to it first
+	 */
+	private static class InstitutionTask extends RecursiveTask<Institution> {
+		private static final long	serialVersionUID	= -2291630584713307459L;
+
+		private final String		instName;
+		private final String		instURL;
+		private final String		stateAbbr;
+		private final String		stateName;
+		private final int			index;
+		private final RowSpill		spill;
+
+		public InstitutionTask(String instName, String instURL, String stateAbbr, String stateName, int index,
+				RowSpill spill) {
+			this.instName = instName;
+			this.instURL = instURL;
+			this.stateAbbr = stateAbbr;
+			this.stateName = stateName;
+			this.index = index;
+			this.spill = spill;
+		}
+
+		@Override
+		protected Institution compute() {
+			Institution inst = new Institution(instName, instURL, stateAbbr, stateName, getInstOptions());
+			if (spill == null) return inst;
+			// the spill has the row, so the institution doesn't need to be kept until the task is joined
+			spill.add(index, inst);
+			return null;
+		}
+	}
+
 	public static boolean[] getInstOptions() {
 		return instOptions;
 	}
@@ -209,19 +442,12 @@ public class CSVWriter implements Runnable {
 	 * @return
 	 */
 	private static ArrayList<String> getColumns(ArrayList<Institution> institutions) {
-		ArrayList<String> allColumns = new ArrayList<String>();
-		ArrayList<String> columns = new ArrayList<String>();
-		String column;
+		// every state registers its headers in the same registry, so the union is just a set of ids
+		ArrayList<int[]> columnIds = new ArrayList<int[]>(institutions.size());
 		for (Institution i : institutions) {
-			columns = i.getHeaders();
-			for (int c = 0; c < columns.size(); c++) {
-				column = columns.get(c);
-				if (!allColumns.contains(column)) {
-					allColumns.add(column);
-				}
-			}
+			columnIds.add(i.getColumnIds());
 		}
-		allColumns.trimToSize();
+		ArrayList<String> allColumns = ColumnRegistry.getShared().getUnion(columnIds);
 		allColumns = Util.alphabetize(allColumns);
 		allColumns.remove("Name");
 		allColumns.add(0, "Name");
@@ -230,110 +456,161 @@ public class CSVWriter implements Runnable {
 	}
 
 	/**
-	 * Returns a comma-delimited ArrayList<String> of all institutional values
+	 * Returns a table of all institutional values, with a row for each valid institution. The table lays the columns out once, so each
+	 * institution's row is a single merge
 	 * 
 	 * @param institutions
 	 * @param columns
 	 * @return
 	 */
-	private static ArrayList<String> getValues(ArrayList<Institution> institutions, ArrayList<String> columns) {
-		ArrayList<String> allValues = new ArrayList<String>();
-		ArrayList<String> theseValues = new ArrayList<String>();
-		String row;
+	private static ResultTable getValues(ArrayList<Institution> institutions, ArrayList<String> columns) {
+		ResultTable table = new ResultTable(columns, Institution.getValueDictionary(), institutions.size());
 		for (Institution inst : institutions) {
-			theseValues = inst.setFinalValues(columns);
-			// if this institution is valid, proceed adding it to all values
-			if (!theseValues.get(0).equals("INVALID_INSTITUTION")) {
-				// make all values a single String and add it
-				row = Util.arrayListToString(theseValues);
-				allValues.add(row);
-			}
+			inst.addTo(table);
 		}
-		allValues.trimToSize();
-		return allValues;
+		return table;
 	}
 
 	/**
 	 * Writes all data to a .csv file, usable in Microsoft Excel, OpenOffice, etc
 	 * 
 	 * @param folderPath
-	 * @param csvColumns
-	 * @param csvRows
+	 * @param suffix
+	 *            added to the file's name after its timestamp
+	 * @param csvSource
 	 */
-	private static void writeCSV(String folderPath, ArrayList<String> csvColumns, ArrayList<String> csvRows) {
+	private static void writeCSV(String folderPath, String suffix, CSVSource csvSource) {
 		Date date = new Date();
 		Timestamp stamp = new Timestamp(date.getTime());
 		String time = stamp.toString().replaceAll(":", ".");
-		String csvFilePath = folderPath + time + ".csv";
+		String csvFilePath = folderPath + time + suffix + (gzippingCSV ? ".csv.gz" : ".csv");
 		Util.makeFolders(folderPath);
 
 		Path path = Paths.get(csvFilePath);
-		String columns = Util.arrayListToString(csvColumns);
 		System.out.println("\n====================== Writing CSV File " + csvFilePath + "!");
-		try (BufferedWriter writer = Files.newBufferedWriter(path, CHARSET)) {
-			writer.write(columns);
-
-			for (String row : csvRows) {
-				writer.newLine();
-				writer.write(row);
-			}
+		long start = System.nanoTime();
+		// the columnar file gets its rows from the same pass that writes the CSV file
+		ColumnarWriter columnar = exportingColumnar ? new ColumnarWriter(csvSource.getColumns()) : null;
+		CSVOutput writer = null;
+		try (CSVOutput output = new CSVOutput(path, Util.getOutputCharset(), gzippingCSV)) {
+			writer = output;
+			csvSource.write(output, columnar);
 		} catch (IOException ioe) {
 			System.err.println("File " + csvFilePath + " couldn't be read/written to!");
 			ioe.printStackTrace();
 			System.exit(1);
 		}
+		long bytes = writer.getBytesWritten();
 		System.out.println("\t" + csvFilePath + " was written!\n");
+		if (printingBenchmarks) System.out.println("\t" + bytes + " bytes of " + Util.getOutputCharset() + " in "
+				+ (System.nanoTime() - start) / 1000000 + " ms, " + path.toFile().length() + " bytes on disk\n");
+		if (columnar != null) writeColumnar(folderPath + time + suffix + ColumnarWriter.EXTENSION, columnar);
 	}
 
 	/**
-	 * Removes columns that have no values across all state institutions
+	 * Writes the rows that were added to the columnar writer as the .csv file was written to a binary columnar file, which
+	 * ColumnarReader can read a column of at a time
 	 * 
-	 * @param institutions
-	 * @param columns
+	 * @param filePath
+	 * @param columnar
 	 */
-	private static void removeEmptyColumns(ArrayList<Institution> institutions, ArrayList<String> columns) {
-		ArrayList<String> theseValues = new ArrayList<String>();
-		boolean removeColumn;
-		String column;
-		String value;
-		// for every column and every institution
-		for (int c = 0; c < columns.size(); c++) {
-			removeColumn = true;
-			column = columns.get(c);
-			System.out.println("\nCurrent Column:\t" + column);// DELETE
-			for (Institution inst : institutions) {
-				System.out.println("Current Institution:\t" + inst.getName());// DELETE
-				// check to see if that institution has this header
-				int columnIndex = inst.getHeaders().indexOf(column);
-				// if it doesn't have this header, move on
-				if (columnIndex == -1) {
-					continue;
-					// otherwise,
-				} else {
-					// get the final values for this institution
-					theseValues = inst.setFinalValues(columns);
-					// if it's an invalid institution, move on
-					if (theseValues.size() == 1) {
-						continue;
-						// otherwise,
-					} else {
-						// get the specific value for this column
-						value = theseValues.get(columnIndex);
-						// print out some info
-						System.out.println("Current Value:\t" + value);// DELETE
-						// if the value is valid, keep the column and move on to the next
-						if (value != null && !value.isEmpty() && !value.equals(" ")) {
-							removeColumn = false;
-							break;
-						}
-					}
-				}
-			}
-			// if no institutions had a value for this column, remove it
-			if (removeColumn) {
-				columns.remove(column);
-				System.out.println("Removed column " + column + "!");
-			}
+	private static void writeColumnar(String filePath, ColumnarWriter columnar) {
+		System.out.println("\n====================== Writing Columnar File " + filePath + "!");
+		try {
+			columnar.write(filePath);
+		} catch (IOException ioe) {
+			System.err.println("File " + filePath + " couldn't be read/written to!");
+			ioe.printStackTrace();
+			System.exit(1);
 		}
+		System.out.println("\t" + filePath + " was written!\n");
+	}
+
+	/**
+	 * Writes the rows a run that didn't finish left spilled in the folder to their own .csv file, then deletes the spill
+	 * 
+	 * @param folderPath
+	 */
+	private static void recoverCSV(String folderPath) {
+		RowSpill spill = null;
+		try {
+			spill = RowSpill.recover(folderPath);
+		} catch (IOException ioe) {
+			System.err.println("Spill in " + folderPath + " couldn't be read!");
+			ioe.printStackTrace();
+			System.exit(1);
+		}
+		if (spill.getRowCount() == 0) {
+			System.out.println("\n====================== Nothing to recover from " + spill + "!");
+			spill.delete();
+			return;
+		}
+		System.out.println("\n====================== Recovering " + spill.getRowCount() + " rows from " + spill + "!");
+		if (!keepingEmptyColumns) removeEmptyColumns(spill);
+		writeCSV(folderPath, " (RECOVERED)", spill);
+		spill.delete();
+	}
+
+	/**
+	 * Merges a state's rows into the national dataset on this state's thread, while other states are still running
+	 * 
+	 * @param stateAbbr
+	 * @param stateName
+	 * @param csvSource
+	 */
+	private static void mergeNational(String stateAbbr, String stateName, CSVSource csvSource) {
+		try {
+			NationalMerger.getShared().add(stateAbbr, stateName, csvSource);
+		} catch (IOException ioe) {
+			System.err.println("Couldn't merge " + stateName + " into the national CSV file!");
+			ioe.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Merges the newest CSV file in a state's csv folder into the national dataset, without fetching the state again
+	 * 
+	 * @param stateAbbr
+	 * @param stateName
+	 */
+	public static void mergeSnapshot(String stateAbbr, String stateName) {
+		File snapshot = CSVReader.getLatestSnapshot("./" + stateAbbr + "/csv/");
+		if (snapshot == null) {
+			System.err.println("No CSV file for " + stateName + " to merge!");
+			return;
+		}
+		System.out.println("Merging " + snapshot + "...");
+		try {
+			NationalMerger.getShared().add(stateAbbr, stateName.replace("_", " "), snapshot);
+		} catch (IOException ioe) {
+			System.err.println("File " + snapshot + " couldn't be read/written to!");
+			ioe.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Writes every state merged so far to one national .csv file, in the same output modes as the states' files
+	 */
+	public static void writeNationalCSV() {
+		NationalMerger merger = NationalMerger.getShared();
+		if (merger.getStateCount() == 0) return;
+		ResultTable nationalTable = merger.getTable();
+		if (!keepingEmptyColumns) removeEmptyColumns(nationalTable);
+		System.out.println("\n====================== " + merger.getStateCount() + " states merged into "
+				+ nationalTable.getRowCount() + " rows and " + nationalTable.getColumnCount() + " columns!");
+		writeCSV(NATIONAL_FOLDER, "", nationalTable);
+	}
+
+	/**
+	 * Removes columns that have no values across all state institutions
+	 * 
+	 * @param csvSource
+	 */
+	private static void removeEmptyColumns(CSVSource csvSource) {
+		ArrayList<String> removed = csvSource.removeEmptyColumns();
+		if (printingCSVColumns && !removed.isEmpty()) System.out.println("\n====================== Removed "
+				+ removed.size() + " empty columns: " + removed);
 	}
 }
@@ -0,0 +1,188 @@
+package csv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Gives each CSV column a stable int id that every state's institutions share, so a column's header is stored once for the whole run and
+ * columns are compared as ints. Ids are handed out in the order headers are first seen, by whichever state sees them first
+ *
+ * @author Jeremy Gilreath
+ *
+ */
+public class ColumnRegistry {
+	private static final ColumnRegistry	shared	= new ColumnRegistry();
+
+	private final Dictionary			headers	= new Dictionary("Columns");
+
+	/**
+	 * The columns of a CSV file in id order, with where each one goes in a row, so an institution's values can be merged into a row in
+	 * one pass over both
+	 */
+	public static class Layout {
+		private final int[]	ids;
+		private final int[]	positions;
+
+		/**
+		 * @param ids
+		 * @param positions
+		 */
+		private Layout(int[] ids, int[] positions) {
+			this.ids = ids;
+			this.positions = positions;
+		}
+
+		/**
+		 * @return the number of columns
+		 */
+		public int size() {
+			return ids.length;
+		}
+
+		/**
+		 * Puts the codes of the values of the institution's columns in their places in the row, leaving the rest alone. Both the
+		 * institution's columns and the layout's are in id order, so each is passed over once
+		 *
+		 * @param columnIds
+		 * @param values
+		 * @param row
+		 */
+		public void merge(int[] columnIds, int[] values, int[] row) {
+			int i = 0, j = 0;
+			while (i < columnIds.length && j < ids.length) {
+				if (columnIds[i] < ids[j]) {
+					i++;
+				} else if (columnIds[i] > ids[j]) {
+					j++;
+				} else {
+					row[positions[j]] = values[i];
+					i++;
+					j++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the registry that every state shares
+	 */
+	public static ColumnRegistry getShared() {
+		return shared;
+	}
+
+	/**
+	 * Returns the header's column id, registering the column if it is new
+	 *
+	 * @param header
+	 * @return
+	 */
+	public int getId(String header) {
+		return headers.encode(header);
+	}
+
+	/**
+	 * Returns the header of the column with the id
+	 *
+	 * @param id
+	 * @return
+	 */
+	public String getHeader(int id) {
+		return headers.decode(id);
+	}
+
+	/**
+	 * Returns the number of columns registered so far
+	 *
+	 * @return
+	 */
+	public int size() {
+		return headers.size();
+	}
+
+	/**
+	 * Returns the headers of every column that any of the lists has, in id order. Each list is only passed over once
+	 *
+	 * @param columnIdLists
+	 * @return
+	 */
+	public ArrayList<String> getUnion(List<int[]> columnIdLists) {
+		BitSet union = new BitSet(size());
+		for (int[] columnIds : columnIdLists) {
+			for (int id : columnIds) {
+				union.set(id);
+			}
+		}
+		ArrayList<String> columns = new ArrayList<String>(union.cardinality());
+		for (int id = union.nextSetBit(0); id >= 0; id = union.nextSetBit(id + 1)) {
+			columns.add(getHeader(id));
+		}
+		return columns;
+	}
+
+	/**
+	 * Lays out the columns of a CSV file
+	 *
+	 * @param columns
+	 * @return
+	 */
+	public Layout getLayout(List<String> columns) {
+		// sort by id, keeping each column's position in the low bits
+		long[] sorted = new long[columns.size()];
+		for (int position = 0; position < sorted.length; position++) {
+			sorted[position] = (long) getId(columns.get(position)) << 32 | position;
+		}
+		Arrays.sort(sorted);
+		int[] ids = new int[sorted.length];
+		int[] positions = new int[sorted.length];
+		for (int i = 0; i < sorted.length; i++) {
+			ids[i] = (int) (sorted[i] >>> 32);
+			positions[i] = (int) sorted[i];
+		}
+		return new Layout(ids, positions);
+	}
+
+	/**
+	 * Sorts an institution's columns and their values by id, keeping only the first value of a column that appears more than once
+	 *
+	 * @param columnIds
+	 * @param values
+	 * @return the number of columns left, which are at the start of the arrays
+	 */
+	public static int sortById(int[] columnIds, int[] values) {
+		long[] sorted = new long[columnIds.length];
+		for (int i = 0; i < sorted.length; i++) {
+			sorted[i] = (long) columnIds[i] << 32 | i;
+		}
+		Arrays.sort(sorted);
+		int[] unsortedValues = values.clone();
+		int count = 0;
+		int id;
+		for (int i = 0; i < sorted.length; i++) {
+			id = (int) (sorted[i] >>> 32);
+			if (count > 0 && columnIds[count - 1] == id) continue;
+			columnIds[count] = id;
+			values[count++] = unsortedValues[(int) sorted[i]];
+		}
+		return count;
+	}
+
+	/**
+	 * Returns where the column is in a list sorted by id, or a negative number if it isn't there
+	 *
+	 * @param columnIds
+	 * @param id
+	 * @return
+	 */
+	public static int indexOf(int[] columnIds, int id) {
+		return Arrays.binarySearch(columnIds, id);
+	}
+
+	/**
+	 * Prints how many columns have been registered
+	 */
+	public void printStats() {
+		headers.printStats();
+	}
+}
@@ -0,0 +1,137 @@
+package csv;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Statistics of the columns of a CSV file, gathered as each row is added so they never need a pass of their own: how many rows have a
+ * value for each column, about how many distinct values it has, and how wide its widest value is. Columns are kept by their id in the
+ * ColumnRegistry. A blank value counts as no value, the same as a missing one
+ *
+ * @author Jeremy Gilreath
+ *
+ */
+public class ColumnStats {
+	// bits in each column's distinct value sketch, past which the estimate levels off
+	private static final int			SKETCH_BITS	= 1024;
+
+	private final ColumnRegistry		registry	= ColumnRegistry.getShared();
+	// columns with at least one value
+	private final BitSet				filled		= new BitSet();
+	private int[]						fills		= new int[64];
+	private int[]						widths		= new int[64];
+	private BitSet[]					sketches	= new BitSet[64];
+
+	/**
+	 * Adds a row's value for a column
+	 *
+	 * @param columnId
+	 * @param value
+	 */
+	public synchronized void add(int columnId, String value) {
+		if (value == null || value.isEmpty() || value.equals(" ")) return;
+		if (columnId >= fills.length) grow(columnId);
+		filled.set(columnId);
+		fills[columnId]++;
+		if (value.length() > widths[columnId]) widths[columnId] = value.length();
+		if (sketches[columnId] == null) sketches[columnId] = new BitSet(SKETCH_BITS);
+		sketches[columnId].set(bucket(value));
+	}
+
+	/**
+	 * Adds a row's values for its columns
+	 *
+	 * @param headers
+	 * @param values
+	 */
+	public synchronized void add(List<String> headers, List<String> values) {
+		for (int i = 0; i < headers.size(); i++) {
+			add(registry.getId(headers.get(i)), values.get(i));
+		}
+	}
+
+	/**
+	 * Makes room for the column's id
+	 *
+	 * @param columnId
+	 */
+	private void grow(int columnId) {
+		int length = Math.max(fills.length * 2, columnId + 1);
+		fills = Arrays.copyOf(fills, length);
+		widths = Arrays.copyOf(widths, length);
+		sketches = Arrays.copyOf(sketches, length);
+	}
+
+	/**
+	 * Returns which bit of a sketch the value sets, spreading the bits of its hash code so similar values land apart
+	 *
+	 * @param value
+	 * @return
+	 */
+	private static int bucket(String value) {
+		int h = value.hashCode();
+		h = (h ^ h >>> 16) * 0x85EBCA6B;
+		h = (h ^ h >>> 13) * 0xC2B2AE35;
+		return (h ^ h >>> 16) & SKETCH_BITS - 1;
+	}
+
+	/**
+	 * Returns whether no row has a value for the column
+	 *
+	 * @param header
+	 * @return
+	 */
+	public synchronized boolean isEmpty(String header) {
+		return !filled.get(registry.getId(header));
+	}
+
+	/**
+	 * Returns the number of rows with a value for the column
+	 *
+	 * @param header
+	 * @return
+	 */
+	public synchronized int getFillCount(String header) {
+		int id = registry.getId(header);
+		return id < fills.length ? fills[id] : 0;
+	}
+
+	/**
+	 * Returns the length of the column's longest value
+	 *
+	 * @param header
+	 * @return
+	 */
+	public synchronized int getMaxWidth(String header) {
+		int id = registry.getId(header);
+		return id < widths.length ? widths[id] : 0;
+	}
+
+	/**
+	 * Estimates the number of distinct values in the column from how many bits of its sketch are still clear. It is close up to a few
+	 * hundred values, and never more than the column's fill count
+	 *
+	 * @param header
+	 * @return
+	 */
+	public synchronized int getDistinctEstimate(String header) {
+		int id = registry.getId(header);
+		if (id >= sketches.length || sketches[id] == null) return 0;
+		int clear = SKETCH_BITS - sketches[id].cardinality();
+		double estimate = SKETCH_BITS * Math.log((double) SKETCH_BITS / Math.max(clear, 1));
+		return (int) Math.min(Math.round(estimate), fills[id]);
+	}
+
+	/**
+	 * Prints each column's fill count, distinct value estimate, and widest value
+	 *
+	 * @param columns
+	 */
+	public void printStats(List<String> columns) {
+		for (String column : columns) {
+			System.out.println("\t" + column + ": " + getFillCount(column) + " filled, ~" + getDistinctEstimate(column)
+					+ " distinct, " + getMaxWidth(column) + " wide");
+		}
+	}
+}
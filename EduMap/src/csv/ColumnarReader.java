@@ -0,0 +1,120 @@
+package csv;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+/**
+ * Reads a file written by ColumnarWriter. Opening it only reads the footer, and each column is memory mapped on its own when it is read,
+ * so reading one column never touches the bytes of the others
+ *
+ * @author Jeremy Gilreath
+ *
+ */
+public class ColumnarReader implements Closeable {
+	private final FileChannel					channel;
+	// each column's offset and length
+	private final LinkedHashMap<String, long[]>	sections	= new LinkedHashMap<String, long[]>();
+	private final int							rows;
+
+	/**
+	 * Opens the file and reads its footer
+	 *
+	 * @param path
+	 * @throws IOException
+	 */
+	public ColumnarReader(Path path) throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			if (size < 20) throw new IOException(path + " isn't a columnar file!");
+			ByteBuffer trailer = channel.map(FileChannel.MapMode.READ_ONLY, size - 12, 12);
+			long footerOffset = trailer.getLong();
+			if (trailer.getInt() != ColumnarWriter.MAGIC || footerOffset < 8 || footerOffset > size - 12) {
+				throw new IOException(path + " isn't a columnar file!");
+			}
+			ByteBuffer footer = channel.map(FileChannel.MapMode.READ_ONLY, footerOffset, size - 12 - footerOffset);
+			rows = footer.getInt();
+			int columns = footer.getInt();
+			for (int c = 0; c < columns; c++) {
+				sections.put(readString(footer), new long[] { footer.getLong(), footer.getLong() });
+			}
+		} catch (IOException ioe) {
+			channel.close();
+			throw ioe;
+		}
+	}
+
+	/**
+	 * @return the number of rows
+	 */
+	public int getRowCount() {
+		return rows;
+	}
+
+	/**
+	 * @return the headers of the columns, in the order they were written
+	 */
+	public ArrayList<String> getColumns() {
+		return new ArrayList<String>(sections.keySet());
+	}
+
+	/**
+	 * Reads a column's value for each row, with null for a missing value. Rows with the same value share one String
+	 *
+	 * @param header
+	 * @return
+	 * @throws IOException
+	 *             if the file doesn't have the column
+	 */
+	public String[] readColumn(String header) throws IOException {
+		long[] section = sections.get(header);
+		if (section == null) throw new IOException("No column " + header + "!");
+		ByteBuffer column = channel.map(FileChannel.MapMode.READ_ONLY, section[0], section[1]);
+		String[] dictionary = new String[column.getInt()];
+		int width = column.get();
+		for (int i = 0; i < dictionary.length; i++) {
+			dictionary[i] = readString(column);
+		}
+		long[] nulls = new long[(rows + 63) / 64];
+		for (int i = 0; i < nulls.length; i++) {
+			nulls[i] = column.getLong();
+		}
+		String[] values = new String[rows];
+		int code;
+		for (int row = 0; row < rows; row++) {
+			if (width == 1) {
+				code = column.get() & 0xFF;
+			} else if (width == 2) {
+				code = column.getShort() & 0xFFFF;
+			} else {
+				code = column.getInt();
+			}
+			if ((nulls[row >> 6] & 1L << row) == 0) values[row] = dictionary[code];
+		}
+		return values;
+	}
+
+	/**
+	 * Reads a string written as its length and UTF-8 bytes
+	 *
+	 * @param buffer
+	 * @return
+	 */
+	private static String readString(ByteBuffer buffer) {
+		byte[] utf8 = new byte[buffer.getInt()];
+		buffer.get(utf8);
+		return new String(utf8, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,192 @@
+package csv;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Writes a state's rows as a binary columnar file, so a column can be read without parsing the CSV text or any other column. The file is
+ * big-endian:
+ *
+ * <pre>
+ * header   int MAGIC, int VERSION
+ * columns  for each column, one after another:
+ *            int dictionary size, byte code width (1, 2 or 4), the dictionary's strings,
+ *            long[(rows + 63) / 64] null bitmap, then a code of the code width for each row (0 for nulls)
+ * footer   int rows, int columns, then for each column: string header, long offset, long length
+ * trailer  long offset of the footer, int MAGIC
+ * </pre>
+ *
+ * Each string is an int length and its UTF-8 bytes. Every column has its own dictionary of its distinct values, in the order they are
+ * first seen. A missing value is written as null.
+ *
+ * Since each column is written whole, every row's codes and every distinct value are kept until the file is written: an int per cell,
+ * plus the dictionaries. With Streaming CSV on, the export still holds the state's rows as these codes, even though the CSV file doesn't
+ *
+ * @author Jeremy Gilreath
+ *
+ */
+public class ColumnarWriter implements RowSink {
+	public static final int								MAGIC		= 0x45444343;
+	public static final int								VERSION		= 1;
+	public static final String							EXTENSION	= ".col";
+
+	private final ArrayList<String>						columns;
+	private final ArrayList<HashMap<String, Integer>>	codesByValue;
+	private final ArrayList<ArrayList<String>>			dictionaries;
+	private int[][]										codes;
+	private long[][]									nulls;
+	private int											rows;
+
+	/**
+	 * @param columns
+	 */
+	public ColumnarWriter(List<String> columns) {
+		this.columns = new ArrayList<String>(columns);
+		codesByValue = new ArrayList<HashMap<String, Integer>>(columns.size());
+		dictionaries = new ArrayList<ArrayList<String>>(columns.size());
+		for (int c = 0; c < columns.size(); c++) {
+			codesByValue.add(new HashMap<String, Integer>());
+			dictionaries.add(new ArrayList<String>());
+		}
+		codes = new int[columns.size()][64];
+		nulls = new long[columns.size()][1];
+	}
+
+	@Override
+	public void addRow(List<String> row) {
+		if (rows == codes[0].length) grow();
+		String value;
+		Integer code;
+		for (int c = 0; c < columns.size(); c++) {
+			value = row.get(c);
+			if (value == null || value.equals(" ")) {
+				nulls[c][rows >> 6] |= 1L << rows;
+				continue;
+			}
+			code = codesByValue.get(c).get(value);
+			if (code == null) {
+				code = dictionaries.get(c).size();
+				codesByValue.get(c).put(value, code);
+				dictionaries.get(c).add(value);
+			}
+			codes[c][rows] = code;
+		}
+		rows++;
+	}
+
+	/**
+	 * Doubles the number of rows every column can hold
+	 */
+	private void grow() {
+		int capacity = Math.max(codes[0].length * 2, 64);
+		for (int c = 0; c < columns.size(); c++) {
+			codes[c] = Arrays.copyOf(codes[c], capacity);
+			nulls[c] = Arrays.copyOf(nulls[c], (capacity + 63) / 64);
+		}
+	}
+
+	/**
+	 * @return the number of rows added
+	 */
+	public int getRowCount() {
+		return rows;
+	}
+
+	/**
+	 * Writes the file, replacing any that is there
+	 *
+	 * @param filePath
+	 * @throws IOException
+	 */
+	public void write(String filePath) throws IOException {
+		long[] offsets = new long[columns.size()];
+		long[] lengths = new long[columns.size()];
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filePath), 64 * 1024))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			long position = 8;
+			for (int c = 0; c < columns.size(); c++) {
+				offsets[c] = position;
+				lengths[c] = writeColumn(out, c);
+				position += lengths[c];
+			}
+			out.writeInt(rows);
+			out.writeInt(columns.size());
+			for (int c = 0; c < columns.size(); c++) {
+				writeString(out, columns.get(c));
+				out.writeLong(offsets[c]);
+				out.writeLong(lengths[c]);
+			}
+			out.writeLong(position);
+			out.writeInt(MAGIC);
+		}
+	}
+
+	/**
+	 * Writes a column's dictionary, null bitmap, and codes
+	 *
+	 * @param out
+	 * @param column
+	 * @return the number of bytes written
+	 * @throws IOException
+	 */
+	private long writeColumn(DataOutputStream out, int column) throws IOException {
+		ArrayList<String> dictionary = dictionaries.get(column);
+		int width = getCodeWidth(dictionary.size());
+		long length = 5;
+		out.writeInt(dictionary.size());
+		out.writeByte(width);
+		for (String value : dictionary) {
+			length += writeString(out, value);
+		}
+		for (int i = 0; i < (rows + 63) / 64; i++) {
+			out.writeLong(nulls[column][i]);
+		}
+		length += (rows + 63) / 64 * 8;
+		int[] columnCodes = codes[column];
+		for (int row = 0; row < rows; row++) {
+			if (width == 1) {
+				out.writeByte(columnCodes[row]);
+			} else if (width == 2) {
+				out.writeShort(columnCodes[row]);
+			} else {
+				out.writeInt(columnCodes[row]);
+			}
+		}
+		return length + (long) rows * width;
+	}
+
+	/**
+	 * Returns the fewest bytes that hold every code of a dictionary of the size
+	 *
+	 * @param size
+	 * @return
+	 */
+	static int getCodeWidth(int size) {
+		if (size <= 1 << 8) return 1;
+		if (size <= 1 << 16) return 2;
+		return 4;
+	}
+
+	/**
+	 * Writes a string as its length and UTF-8 bytes
+	 *
+	 * @param out
+	 * @param s
+	 * @return the number of bytes written
+	 * @throws IOException
+	 */
+	private static int writeString(DataOutputStream out, String s) throws IOException {
+		byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(utf8.length);
+		out.write(utf8);
+		return 4 + utf8.length;
+	}
+}
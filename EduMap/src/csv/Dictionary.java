@@ -0,0 +1,111 @@
+package csv;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread safe dictionary that stores each distinct string once and gives it a compact int code, so institutions can keep codes instead
+ * of their own copies of the same headers and values. Codes are handed out in the order strings are first seen and never change
+ *
+ * @author Jeremy Gilreath
+ *
+ */
+public class Dictionary {
+	// the code of null, which is never stored
+	public static final int								NULL	= -1;
+
+	private final String								name;
+	private final ConcurrentHashMap<String, Integer>	codes	= new ConcurrentHashMap<String, Integer>();
+	private volatile String[]							strings	= new String[256];
+	private int											size;
+	private final AtomicLong							lookups	= new AtomicLong();
+
+	/**
+	 * @param name
+	 */
+	public Dictionary(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Returns the string's code, storing the string if it hasn't been seen before
+	 *
+	 * @param s
+	 * @return
+	 */
+	public int encode(String s) {
+		if (s == null) return NULL;
+		Integer code = codes.get(s);
+		if (code == null) {
+			synchronized (this) {
+				code = codes.get(s);
+				if (code == null) {
+					if (size == strings.length) {
+						String[] grown = new String[size * 2];
+						System.arraycopy(strings, 0, grown, 0, size);
+						strings = grown;
+					}
+					strings[size] = s;
+					code = size++;
+					// only published once the string is in place, so any code that is handed out can be decoded
+					codes.put(s, code);
+				}
+			}
+		}
+		lookups.incrementAndGet();
+		return code;
+	}
+
+	/**
+	 * Returns the codes of each of the strings
+	 *
+	 * @param s
+	 * @return
+	 */
+	public int[] encode(String[] s) {
+		int[] encoded = new int[s.length];
+		for (int i = 0; i < s.length; i++) {
+			encoded[i] = encode(s[i]);
+		}
+		return encoded;
+	}
+
+	/**
+	 * Returns the string with the code
+	 *
+	 * @param code
+	 * @return
+	 */
+	public String decode(int code) {
+		return code == NULL ? null : strings[code];
+	}
+
+	/**
+	 * Forgets every string and starts handing out codes from 0 again. Only safe once nothing still holds a code it handed out
+	 */
+	public synchronized void clear() {
+		codes.clear();
+		strings = new String[256];
+		size = 0;
+		lookups.set(0);
+	}
+
+	/**
+	 * Returns the number of distinct strings stored
+	 *
+	 * @return
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Prints how many strings were encoded and how few of them had to be stored
+	 */
+	public void printStats() {
+		int stored = size();
+		if (stored == 0) return;
+		System.out.println("\t" + name + ": " + lookups + " encoded, " + stored + " stored once each ("
+				+ (lookups.get() - stored) + " copies saved)");
+	}
+}
@@ -0,0 +1,181 @@
+package csv;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import org.jsoup.nodes.Attribute;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+/**
+ * An index of a Document's elements by class name, tag name and attribute value, built in one pass so repeated lookups on the same
+ * Document don't each walk every element. Elements are kept in document order
+ *
+ * @author Jeremy Gilreath
+ *
+ */
+public class ElementIndex {
+	private static volatile Element										sink;
+
+	private final HashMap<String, ArrayList<Element>>					classes		= new HashMap<String, ArrayList<Element>>();
+	private final HashMap<String, ArrayList<Element>>					tags		= new HashMap<String, ArrayList<Element>>();
+	private final HashMap<String, HashMap<String, ArrayList<Element>>>	attributes	= new HashMap<String, HashMap<String, ArrayList<Element>>>();
+
+	/**
+	 * Indexes every element of the document
+	 * 
+	 * @param doc
+	 */
+	public ElementIndex(Document doc) {
+		HashMap<String, ArrayList<Element>> values;
+		for (Element e : doc.getAllElements()) {
+			add(tags, e.tagName(), e);
+			if (e.attributes().size() > 0) {
+				for (Attribute a : e.attributes()) {
+					values = attributes.get(a.getKey());
+					if (values == null) {
+						values = new HashMap<String, ArrayList<Element>>();
+						attributes.put(a.getKey(), values);
+					}
+					add(values, a.getValue(), e);
+					if (a.getKey().equals("class")) addClasses(a.getValue(), e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Indexes each of the whitespace separated class names, without regard to case just like Element.hasClass(). A class listed twice
+	 * is only indexed once
+	 * 
+	 * @param classAttribute
+	 * @param e
+	 */
+	private void addClasses(String classAttribute, Element e) {
+		int length = classAttribute.length();
+		int start, end = 0;
+		String className;
+		ArrayList<Element> named;
+		while (end < length) {
+			start = end;
+			while (start < length && Character.isWhitespace(classAttribute.charAt(start)))
+				start++;
+			end = start;
+			while (end < length && !Character.isWhitespace(classAttribute.charAt(end)))
+				end++;
+			if (start == end) break;
+			className = classAttribute.substring(start, end).toLowerCase();
+			named = classes.get(className);
+			if (named == null || named.get(named.size() - 1) != e) add(classes, className, e);
+		}
+	}
+
+	/**
+	 * Returns every element that has the class name among its classes
+	 * 
+	 * @param className
+	 * @return
+	 */
+	public List<Element> getElementsByClass(String className) {
+		return get(classes, className.toLowerCase());
+	}
+
+	/**
+	 * Returns every element with the tag name
+	 * 
+	 * @param tagName
+	 * @return
+	 */
+	public List<Element> getElementsByTag(String tagName) {
+		return get(tags, tagName.toLowerCase());
+	}
+
+	/**
+	 * Returns every element whose attribute has exactly the value
+	 * 
+	 * @param key
+	 * @param value
+	 * @return
+	 */
+	public List<Element> getElementsByAttributeValue(String key, String value) {
+		HashMap<String, ArrayList<Element>> values = attributes.get(key);
+		return values == null ? Collections.<Element> emptyList() : get(values, value);
+	}
+
+	/**
+	 * Returns the last element whose whole class attribute is exactly the value, or null if there isn't one
+	 * 
+	 * @param attributeClass
+	 * @return
+	 */
+	public Element getLastByClassAttribute(String attributeClass) {
+		List<Element> elements = getElementsByAttributeValue("class", attributeClass);
+		return elements.isEmpty() ? null : elements.get(elements.size() - 1);
+	}
+
+	/**
+	 * Times the linear scan of Util.getElement() against building an index and looking the same classes up in it, and prints both
+	 * 
+	 * @param doc
+	 * @param name
+	 * @param attributeClasses
+	 */
+	public static void benchmark(Document doc, String name, String... attributeClasses) {
+		final int ROUNDS = 20;
+		Element found = null;
+		long start = System.nanoTime();
+		for (int i = 0; i < ROUNDS; i++) {
+			for (String attributeClass : attributeClasses) {
+				found = Util.getElement(doc, attributeClass);
+			}
+		}
+		long scanNanos = (System.nanoTime() - start) / ROUNDS;
+
+		start = System.nanoTime();
+		ElementIndex index = null;
+		for (int i = 0; i < ROUNDS; i++) {
+			index = new ElementIndex(doc);
+		}
+		long buildNanos = (System.nanoTime() - start) / ROUNDS;
+
+		start = System.nanoTime();
+		for (int i = 0; i < ROUNDS; i++) {
+			for (String attributeClass : attributeClasses) {
+				found = index.getLastByClassAttribute(attributeClass);
+			}
+		}
+		long lookupNanos = (System.nanoTime() - start) / ROUNDS;
+		sink = found;
+
+		System.out.println("\n====================== Element lookups on " + name + " (" + doc.getAllElements().size()
+				+ " elements, " + attributeClasses.length + " classes):");
+		System.out.println("\tLinear scans: " + scanNanos / 1000 + " us");
+		System.out.println("\tIndex: " + buildNanos / 1000 + " us to build + " + lookupNanos / 1000 + " us to look up");
+	}
+
+	/**
+	 * @param map
+	 * @param key
+	 * @param e
+	 */
+	private static void add(HashMap<String, ArrayList<Element>> map, String key, Element e) {
+		ArrayList<Element> elements = map.get(key);
+		if (elements == null) {
+			elements = new ArrayList<Element>(1);
+			map.put(key, elements);
+		}
+		elements.add(e);
+	}
+
+	/**
+	 * @param map
+	 * @param key
+	 * @return
+	 */
+	private static List<Element> get(HashMap<String, ArrayList<Element>> map, String key) {
+		ArrayList<Element> elements = map.get(key);
+		return elements == null ? Collections.<Element> emptyList() : Collections.unmodifiableList(elements);
+	}
+}
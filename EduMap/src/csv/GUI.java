@@ -11,6 +11,7 @@ import java.awt.event.ItemListener;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.Iterator;
@@ -19,6 +20,7 @@ import java.util.Set;
 import java.util.Map.Entry;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 
 import javax.swing.JApplet;
@@ -41,9 +43,13 @@ public class GUI extends JApplet {
 	private static final long					serialVersionUID	= 886831141873682866L;
 
 	private static final int					MAX_THREADS			= 8;
+	private static final int					INST_THREADS		= 4;
+	private static final int					MAX_REQUESTS		= 64;
 	private static final int					WIDTH				= 800;
 	private static final int					HEIGHT				= 768;
 
+	private static final String					DNS_CACHE			= "./dns.cache";
+
 	private static final String[]				STATES				= { "AK", "AL", "AR", "AZ", "CA", "CO", "CT", "DE",
 			"FL", "GA", "HI", "IA", "ID", "IL", "IN", "KS", "KY", "LA", "MA", "MD", "ME", "MI", "MN", "MO", "MS", "MT",
 			"NC", "ND", "NE", "NH", "NJ", "NM", "NV", "NY", "OH", "OK", "OR", "PA", "RI", "SC", "SD", "TN", "TX", "UT",
@@ -71,6 +77,17 @@ public class GUI extends JApplet {
 	private static JCheckBox					optWrDoc;
 	private static JCheckBox					optFeOnlineUpdates;
 	private static JCheckBox					optFeOnlineOnly;
+	private static JCheckBox					optFeIncremental;
+	private static JCheckBox					optPackedStore;
+	private static JCheckBox					optInfoboxCache;
+	private static JCheckBox					optStreamingScanner;
+	private static JCheckBox					optStreamingCSV;
+	private static JCheckBox					optKeepEmptyColumns;
+	private static JCheckBox					optUTF8Output;
+	private static JCheckBox					optGzipCSV;
+	private static JCheckBox					optColumnarExport;
+	private static JCheckBox					optNationalCSV;
+	private static JCheckBox					optFromSnapshots;
 	private static JCheckBox					optPrURLs;
 	private static JCheckBox					optPrElements;
 	private static JCheckBox					optWrElements;
@@ -88,11 +105,15 @@ public class GUI extends JApplet {
 	private static JCheckBox					optPrIPs;
 	private static JCheckBox					optWrIPs;
 	private static JCheckBox					optComAllFiles;
+	private static JCheckBox					optParInstitutions;
+	private static JCheckBox					optWorkStealing;
+	private static JCheckBox					optVirtualThreads;
 	private static JCheckBox					optPrDescription;
 	private static JCheckBox					optPrFinalValues;
 	private static JCheckBox					optPrCSVColumns;
 	private static JCheckBox					optPrCSVRows;
 	private static JCheckBox					optPrInstitutions;
+	private static JCheckBox					optPrBenchmarks;
 	private static JCheckBox					all;
 	private static JCheckBox					none;
 
@@ -202,6 +223,17 @@ public class GUI extends JApplet {
 		optWrDoc = new JCheckBox("Writing Documents");
 		optFeOnlineUpdates = new JCheckBox("Fetch Online Updates");
 		optFeOnlineOnly = new JCheckBox("Fetch Online Only");
+		optFeIncremental = new JCheckBox("Incremental Refresh");
+		optPackedStore = new JCheckBox("Packed Store");
+		optInfoboxCache = new JCheckBox("Infobox Cache");
+		optStreamingScanner = new JCheckBox("Streaming Scanner");
+		optStreamingCSV = new JCheckBox("Streaming CSV");
+		optKeepEmptyColumns = new JCheckBox("Keep Empty Columns");
+		optUTF8Output = new JCheckBox("UTF-8 Output");
+		optGzipCSV = new JCheckBox("Gzip CSV");
+		optColumnarExport = new JCheckBox("Columnar Export");
+		optNationalCSV = new JCheckBox("National CSV");
+		optFromSnapshots = new JCheckBox("From Snapshots");
 		optPrURLs = new JCheckBox("Printing URLs");
 		optPrElements = new JCheckBox("Printing Elements");
 		optWrElements = new JCheckBox("Writing Elements");
@@ -219,11 +251,15 @@ public class GUI extends JApplet {
 		optPrIPs = new JCheckBox("Printing IPs");
 		optWrIPs = new JCheckBox("Writing IPs");
 		optComAllFiles = new JCheckBox("Combining All Files");
+		optParInstitutions = new JCheckBox("Parallel Institutions");
+		optWorkStealing = new JCheckBox("Work Stealing");
+		optVirtualThreads = new JCheckBox("Virtual Threads");
 		optPrDescription = new JCheckBox("Printing Description");
 		optPrFinalValues = new JCheckBox("Printing Final Values");
 		optPrCSVColumns = new JCheckBox("Printing CSV Columns");
 		optPrCSVRows = new JCheckBox("Printing CSV Rows");
 		optPrInstitutions = new JCheckBox("Printing Institutions");
+		optPrBenchmarks = new JCheckBox("Printing Benchmarks");
 		all = new JCheckBox("ALL");
 		none = new JCheckBox("NONE");
 
@@ -249,7 +285,8 @@ public class GUI extends JApplet {
 
 				@Override
 				public void itemStateChanged(ItemEvent arg0) {
-					if ((optFeOnlineOnly.isSelected() || optFeOnlineUpdates.isSelected()) && statesAreSelected()) {
+					if ((optFeOnlineOnly.isSelected() || optFeOnlineUpdates.isSelected() || optFeIncremental.isSelected())
+							&& statesAreSelected()) {
 						writeButton.setVisible(true);
 					} else {
 						writeButton.setVisible(false);
@@ -296,9 +333,11 @@ public class GUI extends JApplet {
 			public void itemStateChanged(ItemEvent arg0) {
 				if (optFeOnlineOnly.isSelected()) {
 					optFeOnlineUpdates.setEnabled(false);
+					optFeIncremental.setEnabled(false);
 					if (statesAreSelected()) writeButton.setVisible(true);
 				} else {
 					optFeOnlineUpdates.setEnabled(true);
+					optFeIncremental.setEnabled(true);
 					writeButton.setVisible(false);
 				}
 			}
@@ -310,14 +349,46 @@ public class GUI extends JApplet {
 			public void itemStateChanged(ItemEvent arg0) {
 				if (optFeOnlineUpdates.isSelected()) {
 					optFeOnlineOnly.setEnabled(false);
+					optFeIncremental.setEnabled(false);
+					if (statesAreSelected()) writeButton.setVisible(true);
+				} else {
+					optFeOnlineOnly.setEnabled(true);
+					optFeIncremental.setEnabled(true);
+					writeButton.setVisible(false);
+				}
+			}
+		});
+
+		optFeIncremental.addItemListener(new ItemListener() {
+
+			@Override
+			public void itemStateChanged(ItemEvent arg0) {
+				if (optFeIncremental.isSelected()) {
+					optFeOnlineOnly.setEnabled(false);
+					optFeOnlineUpdates.setEnabled(false);
 					if (statesAreSelected()) writeButton.setVisible(true);
 				} else {
 					optFeOnlineOnly.setEnabled(true);
+					optFeOnlineUpdates.setEnabled(true);
 					writeButton.setVisible(false);
 				}
 			}
 		});
 
+		// only one execution mode may be chosen at a time
+		ItemListener modeListener = new ItemListener() {
+
+			@Override
+			public void itemStateChanged(ItemEvent arg0) {
+				optParInstitutions.setEnabled(!optWorkStealing.isSelected() && !optVirtualThreads.isSelected());
+				optWorkStealing.setEnabled(!optParInstitutions.isSelected() && !optVirtualThreads.isSelected());
+				optVirtualThreads.setEnabled(!optParInstitutions.isSelected() && !optWorkStealing.isSelected());
+			}
+		};
+		optParInstitutions.addItemListener(modeListener);
+		optWorkStealing.addItemListener(modeListener);
+		optVirtualThreads.addItemListener(modeListener);
+
 		all.addItemListener(new ItemListener() {
 
 			@Override
@@ -351,8 +422,22 @@ public class GUI extends JApplet {
 
 		booleanPanel.add(optFeOnlineUpdates);
 		booleanPanel.add(optFeOnlineOnly);
+		booleanPanel.add(optFeIncremental);
 		booleanPanel.add(optComAllFiles);
+		booleanPanel.add(optParInstitutions);
+		booleanPanel.add(optWorkStealing);
+		booleanPanel.add(optVirtualThreads);
 		booleanPanel.add(optWrDoc);
+		booleanPanel.add(optPackedStore);
+		booleanPanel.add(optInfoboxCache);
+		booleanPanel.add(optStreamingScanner);
+		booleanPanel.add(optStreamingCSV);
+		booleanPanel.add(optKeepEmptyColumns);
+		booleanPanel.add(optUTF8Output);
+		booleanPanel.add(optGzipCSV);
+		booleanPanel.add(optColumnarExport);
+		booleanPanel.add(optNationalCSV);
+		booleanPanel.add(optFromSnapshots);
 		booleanPanel.add(optPrURLs);
 		booleanPanel.add(optPrElements);
 		booleanPanel.add(optWrElements);
@@ -374,6 +459,7 @@ public class GUI extends JApplet {
 		booleanPanel.add(optPrInstitutions);
 		booleanPanel.add(optPrCSVColumns);
 		booleanPanel.add(optPrCSVRows);
+		booleanPanel.add(optPrBenchmarks);
 
 		boxPanel.add(all);
 		boxPanel.add(none);
@@ -456,19 +542,53 @@ public class GUI extends JApplet {
 						addTo(thisTable, state.getText(), stateTable.get(state.getText()));
 					}
 
-					totalThreads = Math.min(thisTable.size(), MAX_THREADS);
-					ExecutorService executor = Executors.newFixedThreadPool(totalThreads);
+					// with work stealing, every worker is kept regardless of the number of states, since the unit of work is the institution
+					// with virtual threads, every state gets its own thread and only the in-flight requests are capped
+					ExecutorService executor;
+					if (optWorkStealing.isSelected()) {
+						totalThreads = MAX_THREADS;
+						executor = new ForkJoinPool(totalThreads);
+					} else if (optVirtualThreads.isSelected()) {
+						totalThreads = thisTable.size();
+						executor = Util.newVirtualThreadExecutor();
+					} else {
+						totalThreads = Math.min(thisTable.size(), MAX_THREADS);
+						executor = Executors.newFixedThreadPool(totalThreads);
+					}
 
+					Util.setMaxRequests(MAX_REQUESTS);
+					HostResolver.load(DNS_CACHE);
+					Util.setUsingPackedStore(optPackedStore.isSelected());
+					Util.setOutputCharset(optUTF8Output.isSelected() ? StandardCharsets.UTF_8 : StandardCharsets.UTF_16);
+					int instThreads = optParInstitutions.isSelected() ? INST_THREADS : 1;
 					int state = 0;
 					int numThreads = 0;
 					Runnable worker = null;
 					Map.Entry<String, String> entry;
 					Set<Entry<String, String>> set = thisTable.entrySet();
 					Iterator<Entry<String, String>> it = set.iterator();
+					CSVWriter.setOptions(csvoptions);
+					// the states of an earlier run aren't part of this run's national CSV file, and their values aren't kept
+					NationalMerger.getShared().reset();
+					Institution.resetValueDictionary();
 					while (it.hasNext()) {
 						if (numThreads < totalThreads) numThreads++;
 						entry = (Entry<String, String>) it.next();
-						worker = new CSVWriter(++state, entry.getKey(), entry.getValue(), csvoptions, instoptions);
+						if (optFromSnapshots.isSelected()) {
+							// merge each state's newest CSV file instead of fetching it again
+							final String stateAbbr = entry.getKey();
+							final String stateName = entry.getValue();
+							worker = new Runnable() {
+
+								@Override
+								public void run() {
+									CSVWriter.mergeSnapshot(stateAbbr, stateName);
+								}
+							};
+						} else {
+							worker = new CSVWriter(++state, entry.getKey(), entry.getValue(), instThreads, csvoptions,
+									instoptions);
+						}
 						executor.execute(worker);
 					}
 					executor.shutdown();
@@ -482,6 +602,17 @@ public class GUI extends JApplet {
 						System.exit(1);
 					}
 					System.out.println(numThreads + " Thread" + (numThreads < 2 ? "" : "s") + " Finished!");
+					if (optNationalCSV.isSelected() || optFromSnapshots.isSelected()) CSVWriter.writeNationalCSV();
+					System.out.println(HostResolver.getLookupCount() + " DNS lookups were made!");
+					if (optPrBenchmarks.isSelected()) {
+						Util.printCacheStats();
+						Infobox.printCacheStats();
+						HeaderRules.printStats();
+						ValueNormalizer.printStats();
+						Institution.printDictionaryStats();
+					}
+					HostResolver.save(DNS_CACHE);
+					PackedStore.closeAll();
 				}
 			}
 
@@ -502,7 +633,7 @@ public class GUI extends JApplet {
 			 * Sets the program options by checking to see if JCheckBoxes are selected
 			 */
 			private void setoptions() {
-				csvoptions = new boolean[10];
+				csvoptions = new boolean[18];
 
 				csvoptions[0] = optPrElements.isSelected() ? true : false;
 				csvoptions[1] = optWrElements.isSelected() ? true : false;
@@ -514,8 +645,16 @@ public class GUI extends JApplet {
 				csvoptions[7] = optPrURLs.isSelected() ? true : false;
 				csvoptions[8] = optFeOnlineOnly.isSelected() ? true : false;
 				csvoptions[9] = optFeOnlineUpdates.isSelected() ? true : false;
+				csvoptions[10] = optVirtualThreads.isSelected() ? true : false;
+				csvoptions[11] = optFeIncremental.isSelected() ? true : false;
+				csvoptions[12] = optPrBenchmarks.isSelected() ? true : false;
+				csvoptions[13] = optStreamingCSV.isSelected() ? true : false;
+				csvoptions[14] = optKeepEmptyColumns.isSelected() ? true : false;
+				csvoptions[15] = optGzipCSV.isSelected() ? true : false;
+				csvoptions[16] = optColumnarExport.isSelected() ? true : false;
+				csvoptions[17] = optNationalCSV.isSelected() ? true : false;
 
-				instoptions = new boolean[19];
+				instoptions = new boolean[22];
 
 				instoptions[0] = optWrElements.isSelected() ? true : false;
 				instoptions[1] = optPrNodes.isSelected() ? true : false;
@@ -536,6 +675,9 @@ public class GUI extends JApplet {
 				instoptions[16] = optFeOnlineUpdates.isSelected() ? true : false;
 				instoptions[17] = optFeOnlineOnly.isSelected() ? true : false;
 				instoptions[18] = optPrUTF16Values.isSelected() ? true : false;
+				instoptions[19] = optFeIncremental.isSelected() ? true : false;
+				instoptions[20] = optInfoboxCache.isSelected() ? true : false;
+				instoptions[21] = optStreamingScanner.isSelected() ? true : false;
 			}
 
 			/**
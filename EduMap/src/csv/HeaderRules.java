@@ -0,0 +1,322 @@
+package csv;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The rules that combine the many ways infoboxes name the same header into one CSV column, such as "Founded" and "Opened" into
+ * "Established". They are read from headers.rules, and every text they look for is compiled into one automaton, so a header is checked
+ * against all of them in a single scan. The same few hundred headers come back for every institution, so each result is remembered
+ *
+ * @author Jeremy Gilreath
+ *
+ */
+public class HeaderRules {
+	private static final String								RULES_FILE	= "headers.rules";
+	private static final int								MAX_CACHED	= 16 * 1024;
+
+	private static final HeaderRules						rules		= load();
+	private static final ConcurrentHashMap<String, String>	cache		= new ConcurrentHashMap<String, String>();
+	private static final AtomicLong							hits		= new AtomicLong();
+	private static final AtomicLong							misses		= new AtomicLong();
+	private static final AtomicLong							missNanos	= new AtomicLong();
+
+	private final ArrayList<String>							columns		= new ArrayList<String>();
+	// each rule's conditions, each of which is a list of terms
+	private final ArrayList<ArrayList<Term>>				conditions	= new ArrayList<ArrayList<Term>>();
+	private final HashMap<String, Integer>					patternIds	= new HashMap<String, Integer>();
+
+	// the automaton: the next state for each state and symbol, and the patterns found on reaching each state
+	private final int[]										symbols		= new int[Character.MAX_VALUE + 1];
+	private int												alphabet;
+	private int[]											next;
+	private BitSet[]										found;
+
+	/**
+	 * One test of a header: whether it is exactly, contains, or doesn't contain some text
+	 */
+	private static class Term {
+		private final char		kind;
+		private final String	text;
+		private final int		pattern;
+
+		/**
+		 * @param kind
+		 * @param text
+		 * @param pattern
+		 */
+		private Term(char kind, String text, int pattern) {
+			this.kind = kind;
+			this.text = text;
+			this.pattern = pattern;
+		}
+	}
+
+	/**
+	 * Parses and compiles the rules
+	 *
+	 * @param lines
+	 * @param source
+	 */
+	private HeaderRules(ArrayList<String> lines, String source) {
+		ArrayList<String> patterns = new ArrayList<String>();
+		String line;
+		int colon;
+		for (int i = 0; i < lines.size(); i++) {
+			line = lines.get(i).trim();
+			if (line.isEmpty() || line.startsWith("#")) continue;
+			colon = line.indexOf(':');
+			if (colon < 1) throw new IllegalArgumentException(source + " line " + (i + 1) + " has no column: " + line);
+			ArrayList<Term> rule = new ArrayList<Term>();
+			for (String condition : line.substring(colon + 1).split("\\|")) {
+				for (String term : condition.split("&")) {
+					term = term.trim();
+					char kind = term.isEmpty() ? 0 : term.charAt(0);
+					String text = kind == '=' || kind == '!' ? term.substring(1).trim() : term;
+					if (text.isEmpty()) throw new IllegalArgumentException(source + " line " + (i + 1) + " has an empty term: "
+							+ line);
+					Integer pattern = -1;
+					if (kind != '=') {
+						pattern = patternIds.get(text);
+						if (pattern == null) {
+							pattern = patterns.size();
+							patternIds.put(text, pattern);
+							patterns.add(text);
+						}
+					}
+					rule.add(new Term(kind == '=' || kind == '!' ? kind : '+', text, pattern));
+				}
+				// a null term ends each condition
+				rule.add(null);
+			}
+			columns.add(line.substring(0, colon).trim());
+			conditions.add(rule);
+		}
+		compile(patterns);
+	}
+
+	/**
+	 * Builds the automaton that finds every pattern in one scan of a header
+	 *
+	 * @param patterns
+	 */
+	private void compile(ArrayList<String> patterns) {
+		// symbol 0 stands for every character that isn't in any pattern
+		alphabet = 1;
+		for (String pattern : patterns) {
+			for (char c : pattern.toCharArray()) {
+				if (symbols[c] == 0) symbols[c] = alphabet++;
+			}
+		}
+
+		// the trie of the patterns, where -1 is a missing edge
+		ArrayList<int[]> trie = new ArrayList<int[]>();
+		ArrayList<BitSet> outputs = new ArrayList<BitSet>();
+		trie.add(newState());
+		outputs.add(new BitSet());
+		int state, symbol;
+		for (int p = 0; p < patterns.size(); p++) {
+			state = 0;
+			for (char c : patterns.get(p).toCharArray()) {
+				symbol = symbols[c];
+				if (trie.get(state)[symbol] == -1) {
+					trie.get(state)[symbol] = trie.size();
+					trie.add(newState());
+					outputs.add(new BitSet());
+				}
+				state = trie.get(state)[symbol];
+			}
+			outputs.get(state).set(p);
+		}
+
+		// turn the trie into a full automaton breadth first, following each state's failure link for its missing edges
+		next = new int[trie.size() * alphabet];
+		found = outputs.toArray(new BitSet[outputs.size()]);
+		int[] failure = new int[trie.size()];
+		LinkedList<Integer> queue = new LinkedList<Integer>();
+		for (symbol = 0; symbol < alphabet; symbol++) {
+			int child = trie.get(0)[symbol];
+			next[symbol] = child == -1 ? 0 : child;
+			if (child > 0) queue.add(child);
+		}
+		while (!queue.isEmpty()) {
+			state = queue.removeFirst();
+			found[state].or(found[failure[state]]);
+			for (symbol = 0; symbol < alphabet; symbol++) {
+				int child = trie.get(state)[symbol];
+				if (child == -1) {
+					next[state * alphabet + symbol] = next[failure[state] * alphabet + symbol];
+				} else {
+					failure[child] = next[failure[state] * alphabet + symbol];
+					next[state * alphabet + symbol] = child;
+					queue.add(child);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return a trie state with no edges
+	 */
+	private int[] newState() {
+		int[] edges = new int[alphabet];
+		for (int i = 0; i < alphabet; i++) {
+			edges[i] = -1;
+		}
+		return edges;
+	}
+
+	/**
+	 * Returns the patterns the header contains
+	 *
+	 * @param header
+	 * @return
+	 */
+	private BitSet match(String header) {
+		BitSet matched = new BitSet();
+		int state = 0;
+		for (int i = 0; i < header.length(); i++) {
+			state = next[state * alphabet + symbols[header.charAt(i)]];
+			if (!found[state].isEmpty()) matched.or(found[state]);
+		}
+		return matched;
+	}
+
+	/**
+	 * Applies the rules in order, each to the header as the rules before it left it
+	 *
+	 * @param header
+	 * @return
+	 */
+	private String apply(String header) {
+		BitSet matched = match(header);
+		for (int r = 0; r < columns.size(); r++) {
+			if (holds(conditions.get(r), header, matched) && !header.equals(columns.get(r))) {
+				header = columns.get(r);
+				matched = match(header);
+			}
+		}
+		return header;
+	}
+
+	/**
+	 * Returns whether any of the rule's conditions hold for the header
+	 *
+	 * @param rule
+	 * @param header
+	 * @param matched
+	 * @return
+	 */
+	private static boolean holds(ArrayList<Term> rule, String header, BitSet matched) {
+		boolean holding = true;
+		for (Term term : rule) {
+			if (term == null) {
+				if (holding) return true;
+				holding = true;
+			} else if (holding) {
+				if (term.kind == '=') holding = header.equals(term.text);
+				else if (term.kind == '!') holding = !matched.get(term.pattern);
+				else holding = matched.get(term.pattern);
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Formats a header for a CSV column: capitalizes the first letter of each word, then applies the rules
+	 *
+	 * @param header
+	 * @return
+	 */
+	public static String canonicalize(String header) {
+		String column = cache.get(header);
+		if (column != null) {
+			hits.incrementAndGet();
+			return column;
+		}
+		long start = System.nanoTime();
+		column = header;
+		if (column.indexOf(' ') != -1 || column.indexOf('-') != -1) column = capitalize(column);
+		column = rules.apply(column);
+		// headers that are really stray values could otherwise grow the cache without end
+		if (cache.size() < MAX_CACHED) cache.put(header, column);
+		misses.incrementAndGet();
+		missNanos.addAndGet(System.nanoTime() - start);
+		return column;
+	}
+
+	/**
+	 * Capitalizes the first letter in every word contained in a String
+	 *
+	 * @param line
+	 * @return
+	 */
+	private static String capitalize(String line) {
+		char[] lineArray = line.toCharArray();
+		StringBuilder newHeader = new StringBuilder(lineArray.length);
+
+		boolean capNext = true;
+		char c;
+		for (int i = 0; i < lineArray.length; i++) {
+			c = lineArray[i];
+			if (capNext) {
+				// outside of ASCII, and for 'i' in some locales, a character can upper case to something else entirely
+				if (c < 128 && c != 'i') newHeader.append(Character.toUpperCase(c));
+				else newHeader.append(String.valueOf(c).toUpperCase());
+				capNext = false;
+			} else {
+				if (c == ' ' || c == '-') capNext = true;
+				newHeader.append(c);
+			}
+		}
+		return newHeader.toString();
+	}
+
+	/**
+	 * Prints how often a header was already known, and how long working out a new one took
+	 */
+	public static void printStats() {
+		long lookups = hits.get() + misses.get();
+		if (lookups == 0) return;
+		System.out.println("\n====================== Header rules:");
+		System.out.println("\t" + rules.columns.size() + " rules, " + cache.size() + " distinct headers");
+		System.out.println("\t" + lookups + " headers formatted, " + hits + " already known (" + hits.get() * 100 / lookups
+				+ "% hit rate)" + (misses.get() > 0 ? ", " + missNanos.get() / 1000 / misses.get() + " us per new header" : ""));
+	}
+
+	/**
+	 * Loads the rules from headers.rules in the working directory if there is one, or else the ones that come with the program
+	 *
+	 * @return
+	 */
+	private static HeaderRules load() {
+		File f = new File(RULES_FILE);
+		String source = f.isFile() ? f.getAbsolutePath() : RULES_FILE;
+		try (InputStream in = f.isFile() ? new FileInputStream(f) : HeaderRules.class.getResourceAsStream(RULES_FILE)) {
+			if (in == null) throw new IOException(RULES_FILE + " is missing!");
+			ArrayList<String> lines = new ArrayList<String>();
+			BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lines.add(line);
+			}
+			return new HeaderRules(lines, source);
+		} catch (IOException | IllegalArgumentException e) {
+			System.err.println("Header rules couldn't be read from " + source + "!");
+			e.printStackTrace();
+			System.exit(1);
+			return null;
+		}
+	}
+}
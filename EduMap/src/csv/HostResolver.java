@@ -0,0 +1,295 @@
+package csv;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Resolves institution websites to IP addresses in the background. Lookups for the same host that are in flight at the same time are
+ * collapsed into one, and both positive and negative answers are cached for a while. The cache can be saved to disk and loaded by later
+ * runs, which only resolve the hosts whose answers have expired
+ *
+ * @author Jeremy Gilreath
+ *
+ */
+public class HostResolver {
+	private static final String[]									DOMAINS			= { ".gov", ".mil", ".us", ".edu",
+			".org", ".net", ".com"												};
+
+	private static final String										NO_ADDRESS		= " ";
+
+	private static final long										POSITIVE_TTL	= 7 * 24 * 60 * 60 * 1000L;
+	private static final long										NEGATIVE_TTL	= 24 * 60 * 60 * 1000L;
+
+	private static final int										CACHE_MAGIC		= 0x444E5331;
+
+	private static final ConcurrentHashMap<String, CacheEntry>		cache			= new ConcurrentHashMap<String, CacheEntry>();
+	private static final ConcurrentHashMap<String, Future<String>>	inFlight		= new ConcurrentHashMap<String, Future<String>>();
+
+	private static final ExecutorService							executor		= Executors
+																							.newCachedThreadPool(new DaemonFactory());
+
+	private static final AtomicInteger								lookups			= new AtomicInteger();
+
+	private static Lookup											lookup			= new DNSLookup();
+
+	/**
+	 * Turns a host name into an address. Replaceable so a local fake can stand in for DNS
+	 */
+	public interface Lookup {
+		String lookup(String host) throws UnknownHostException;
+	}
+
+	/**
+	 * Resolves hosts through the system's DNS resolver
+	 */
+	private static class DNSLookup implements Lookup {
+
+		@Override
+		public String lookup(String host) throws UnknownHostException {
+			return InetAddress.getByName(host).getHostAddress();
+		}
+	}
+
+	/**
+	 * Creates daemon threads so pending lookups never keep the program alive
+	 */
+	private static class DaemonFactory implements ThreadFactory {
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "HostResolver");
+			t.setDaemon(true);
+			return t;
+		}
+	}
+
+	/**
+	 * A cached answer for a host and when it was resolved; a null address means the host could not be resolved
+	 */
+	private static class CacheEntry {
+		private final String	address;
+		private final long		resolved;
+
+		private CacheEntry(String address, long resolved) {
+			this.address = address;
+			this.resolved = resolved;
+		}
+
+		private boolean isFresh() {
+			return System.currentTimeMillis() < resolved + (address == null ? NEGATIVE_TTL : POSITIVE_TTL);
+		}
+	}
+
+	/**
+	 * Replaces the lookup used for hosts that are not cached, and forgets everything cached so far
+	 * 
+	 * @param newLookup
+	 */
+	public static void setLookup(Lookup newLookup) {
+		lookup = newLookup;
+		cache.clear();
+	}
+
+	/**
+	 * Starts resolving the website's host in the background, returning a Future of its IP Address. Websites that can't be resolved give
+	 * " ", just like an institution without a website
+	 * 
+	 * @param website
+	 * @return
+	 */
+	public static Future<String> resolve(String website) {
+		if (website == null) return CompletableFuture.completedFuture(NO_ADDRESS);
+
+		final String host = normalizeHost(website);
+		CacheEntry entry = cache.get(host);
+		if (entry != null && entry.isFresh()) return CompletableFuture.completedFuture(entry.address == null ? NO_ADDRESS
+				: entry.address);
+
+		FutureTask<String> task = new FutureTask<String>(new Callable<String>() {
+
+			@Override
+			public String call() {
+				return lookupAndCache(host);
+			}
+		});
+		Future<String> existing = inFlight.putIfAbsent(host, task);
+		if (existing != null) return existing;
+		executor.execute(task);
+		return task;
+	}
+
+	/**
+	 * Waits for a resolution started by resolve()
+	 * 
+	 * @param address
+	 * @return
+	 */
+	public static String await(Future<String> address) {
+		try {
+			return address.get();
+		} catch (ExecutionException ee) {
+			System.err.println("Could not resolve an IP Address!");
+			ee.printStackTrace();
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+		return NO_ADDRESS;
+	}
+
+	/**
+	 * Looks the host up and caches the answer, unless another lookup cached it first
+	 * 
+	 * @param host
+	 * @return
+	 */
+	private static String lookupAndCache(String host) {
+		try {
+			CacheEntry entry = cache.get(host);
+			if (entry == null || !entry.isFresh()) {
+				// an interrupted lookup never happened, so it isn't cached as a negative answer
+				if (!Util.acquireRequest()) return NO_ADDRESS;
+				String address = null;
+				try {
+					address = lookup.lookup(host);
+				} catch (UnknownHostException uhe) {
+					System.err.println("Could not connect to host " + host + "!");
+				} finally {
+					Util.releaseRequest();
+				}
+				lookups.incrementAndGet();
+				entry = new CacheEntry(address, System.currentTimeMillis());
+				cache.put(host, entry);
+			}
+			return entry.address == null ? NO_ADDRESS : entry.address;
+		} finally {
+			inFlight.remove(host);
+		}
+	}
+
+	/**
+	 * Returns how many hosts were actually looked up, rather than answered from the cache, since the program started
+	 * 
+	 * @return
+	 */
+	public static int getLookupCount() {
+		return lookups.get();
+	}
+
+	/**
+	 * Loads the answers saved by an earlier run. A missing file just means starting with an empty cache
+	 * 
+	 * @param fileName
+	 */
+	public static void load(String fileName) {
+		File f = new File(fileName);
+		if (!f.exists()) return;
+		System.out.println("\n====================== Loading DNS cache " + fileName + "!");
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)))) {
+			if (in.readInt() != CACHE_MAGIC) throw new IOException("not a DNS cache");
+			int count = in.readInt();
+			String host;
+			long resolved;
+			boolean negative;
+			for (int i = 0; i < count; i++) {
+				host = in.readUTF();
+				resolved = in.readLong();
+				negative = in.readBoolean();
+				cache.putIfAbsent(host, new CacheEntry(negative ? null : in.readUTF(), resolved));
+			}
+			System.out.println("\t" + count + " cached hosts were loaded!");
+		} catch (IOException ioe) {
+			System.err.println("\tCouldn't read the DNS cache " + fileName + "! Starting with an empty cache...");
+		}
+	}
+
+	/**
+	 * Saves every answer that hasn't expired yet so the next run can reuse it. Each entry is the host, the time it was resolved, a
+	 * negative-result marker, and the address if there is one
+	 * 
+	 * @param fileName
+	 */
+	public static void save(String fileName) {
+		ArrayList<Entry<String, CacheEntry>> fresh = new ArrayList<Entry<String, CacheEntry>>(cache.size());
+		for (Entry<String, CacheEntry> e : cache.entrySet()) {
+			if (e.getValue().isFresh()) fresh.add(e);
+		}
+
+		// write a temporary file first so a failed save never destroys the previous cache
+		File f = new File(fileName);
+		File temp = new File(fileName + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+			out.writeInt(CACHE_MAGIC);
+			out.writeInt(fresh.size());
+			for (Entry<String, CacheEntry> e : fresh) {
+				out.writeUTF(e.getKey());
+				out.writeLong(e.getValue().resolved);
+				out.writeBoolean(e.getValue().address == null);
+				if (e.getValue().address != null) out.writeUTF(e.getValue().address);
+			}
+		} catch (IOException ioe) {
+			System.err.println("Couldn't write the DNS cache " + fileName + "!");
+			ioe.printStackTrace();
+			return;
+		}
+		// the previous cache stays whole until the new one takes its place in one step
+		try {
+			Files.move(temp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException ioe) {
+			System.err.println("Couldn't replace the DNS cache " + fileName + "!");
+			ioe.printStackTrace();
+			return;
+		}
+		System.out.println("\t" + fresh.size() + " cached hosts were saved to " + fileName + "!");
+	}
+
+	/**
+	 * Strips the website down to the host that is looked up, defaulting to .edu when no known domain is found
+	 * 
+	 * @param url
+	 * @return
+	 */
+	public static String normalizeHost(String url) {
+		// replace spaces with proper formatting for URLs
+		url = url.replaceAll(" ", "%20");
+		// if the url contains http(s), remove all the http(s):// from the url
+		if (url.contains("http") || url.contains("Http")) url = url.substring(url.indexOf("://") + 3);
+		if (!url.startsWith("www.")) url = "www." + url;
+		// check to see if it has a domain
+		boolean domainFound = false;
+		for (String domain : DOMAINS) {
+			if (url.contains(domain)) {
+				domainFound = true;
+				url = url.substring(0, url.indexOf(domain) + domain.length());
+				break;
+			}
+		}
+		// if a domain wasn't found, default to .edu
+		if (!domainFound) {
+			url = Util.removeBoundaryCharacters(url, true);
+			url += ".edu";
+		}
+		return url;
+	}
+}
@@ -0,0 +1,267 @@
+package csv;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+/**
+ * The parts of an institution's page that are actually used: its infobox and its coordinates. Extractions of documents on file are
+ * cached in a packed store per state, keyed by URL and checked against a hash of the document they came from, so a warm run only parses
+ * the few KB of the infobox instead of the whole article
+ *
+ * @author Jeremy Gilreath
+ *
+ */
+public class Infobox {
+	private static final String			CACHE_FOLDER	= "infobox/";
+	private static final int			CACHE_VERSION	= 1;
+
+	private static final AtomicLong		hits			= new AtomicLong();
+	private static final AtomicLong		hitNanos		= new AtomicLong();
+	private static final AtomicLong		misses			= new AtomicLong();
+	private static final AtomicLong		missNanos		= new AtomicLong();
+	private static final AtomicLong		scans			= new AtomicLong();
+	private static final AtomicLong		scannedChars	= new AtomicLong();
+	private static final AtomicLong		scanNanos		= new AtomicLong();
+
+	private final Element				element;
+	private final String				coordinates;
+
+	/**
+	 * @param element
+	 * @param coordinates
+	 */
+	private Infobox(Element element, String coordinates) {
+		this.element = element;
+		this.coordinates = coordinates;
+	}
+
+	/**
+	 * Returns the infobox element, or null if the page doesn't have one
+	 * 
+	 * @return
+	 */
+	public Element getElement() {
+		return element;
+	}
+
+	/**
+	 * Returns the text of the page's decimal coordinates, or null if the page doesn't have them
+	 * 
+	 * @return
+	 */
+	public String getCoordinates() {
+		return coordinates;
+	}
+
+	/**
+	 * Gets the infobox and coordinates of a page, using the cached extraction when the document on file hasn't changed since it was made.
+	 * When streaming, a document on file is scanned for just the two elements instead of being parsed in full. Returns null if there is
+	 * no document
+	 * 
+	 * @param docFilePath
+	 * @param documentURL
+	 * @param writingDoc
+	 * @param fetchOnlineUpdate
+	 * @param fetchOnlineOnly
+	 * @param fetchIncremental
+	 * @param usingCache
+	 * @param streaming
+	 * @return
+	 */
+	public static Infobox get(String docFilePath, String documentURL, boolean writingDoc, boolean fetchOnlineUpdate,
+			boolean fetchOnlineOnly, boolean fetchIncremental, boolean usingCache, boolean streaming) {
+		// only a document that is read from file, and not fetched again, can be answered from the cache
+		long start = System.nanoTime();
+		boolean offline = !fetchOnlineOnly && !fetchIncremental && Util.isCached(docFilePath);
+		long hash = 0;
+		if (usingCache && offline) {
+			hash = Util.hashCachedDocument(docFilePath);
+			Infobox cached = readCached(getCache(docFilePath), documentURL, hash);
+			if (cached != null) {
+				hits.incrementAndGet();
+				hitNanos.addAndGet(System.nanoTime() - start);
+				return cached;
+			}
+		}
+
+		Infobox box = offline && streaming ? scan(docFilePath, documentURL) : null;
+		if (box == null) {
+			Document doc = Util.getDocument(docFilePath, documentURL, writingDoc, fetchOnlineUpdate, fetchOnlineOnly,
+					fetchIncremental);
+			if (doc == null) return null;
+			// both lookups are answered from one pass over the page
+			ElementIndex index = new ElementIndex(doc);
+			Element gpsElem = Util.getElement(index, "geo-dec");
+			box = new Infobox(Util.getElement(index, "infobox vcard"), gpsElem == null ? null : gpsElem.text());
+		}
+
+		if (usingCache) {
+			// a document that was fetched is only cached if it was also written, so the hash matches what is on file
+			if (!offline && writingDoc && Util.isCached(docFilePath)) {
+				offline = true;
+				hash = Util.hashCachedDocument(docFilePath);
+			}
+			if (offline) writeCached(getCache(docFilePath), documentURL, hash, box);
+			misses.incrementAndGet();
+			missNanos.addAndGet(System.nanoTime() - start);
+		}
+		return box;
+	}
+
+	/**
+	 * Prints how many documents were scanned rather than parsed, and how many infoboxes came from the cache rather than the document,
+	 * and how long each took on average
+	 */
+	public static void printCacheStats() {
+		if (scans.get() > 0) {
+			System.out.println("\n====================== Infobox scanner:");
+			System.out.println("\t" + scans + " documents scanned, reading " + scannedChars.get() / scans.get()
+					+ " characters each in " + scanNanos.get() / 1000 / scans.get() + " us each");
+		}
+		if (hits.get() + misses.get() == 0) return;
+		System.out.println("\n====================== Infobox cache:");
+		System.out.println("\t" + hits + " infoboxes from the cache" + (hits.get() > 0 ? " (" + hitNanos.get() / 1000 / hits.get()
+				+ " us each)" : ""));
+		System.out.println("\t" + misses + " infoboxes from parsing the whole document" + (misses.get() > 0 ? " ("
+				+ missNanos.get() / 1000 / misses.get() + " us each)" : ""));
+	}
+
+	/**
+	 * Scans a document on file for its infobox and coordinates, stopping once both are found. Unlike parsing the whole document, which
+	 * keeps the last of each, this keeps the first, which is the same one on a page with a single infobox. Returns null if the scan failed
+	 * and the document should be parsed instead
+	 * 
+	 * @param docFilePath
+	 * @param documentURL
+	 * @return
+	 */
+	private static Infobox scan(String docFilePath, String documentURL) {
+		System.out.println("\n====================== Scanning " + docFilePath + "!");
+		long start = System.nanoTime();
+		InfoboxScanner scanner;
+		try (Reader in = Util.openCachedDocument(docFilePath)) {
+			scanner = new InfoboxScanner(in, documentURL);
+			if (!scanner.scan()) {
+				System.err.println("\tCouldn't scan " + docFilePath + "! Parsing it instead...");
+				return null;
+			}
+		} catch (IOException ioe) {
+			System.err.println("\tCouldn't scan " + docFilePath + "! Parsing it instead...");
+			return null;
+		}
+		scans.incrementAndGet();
+		scannedChars.addAndGet(scanner.getScanned());
+		scanNanos.addAndGet(System.nanoTime() - start);
+		System.out.print(scanner.getElement() == null ? "\tNo infobox was found!" : "\tInfobox was found!");
+		return new Infobox(scanner.getElement(), scanner.getCoordinates());
+	}
+
+	/**
+	 * Returns the store of cached extractions for the state the document belongs to
+	 * 
+	 * @param docFilePath
+	 * @return
+	 */
+	private static PackedStore getCache(String docFilePath) {
+		String docsFolder = docFilePath.substring(0, docFilePath.lastIndexOf('/'));
+		return PackedStore.open(docsFolder.substring(0, docsFolder.lastIndexOf('/') + 1) + CACHE_FOLDER);
+	}
+
+	/**
+	 * Reads the cached extraction for the URL, or returns null if there is none or it was made from a different document
+	 * 
+	 * @param cache
+	 * @param documentURL
+	 * @param hash
+	 * @return
+	 */
+	private static Infobox readCached(PackedStore cache, String documentURL, long hash) {
+		ByteBuffer entry = cache.get(documentURL);
+		if (entry == null) return null;
+		try (DataInputStream in = new DataInputStream(new PackedStore.BufferStream(entry))) {
+			if (in.readInt() != CACHE_VERSION || in.readLong() != hash) return null;
+			String html = in.readBoolean() ? readString(in) : null;
+			String coordinates = in.readBoolean() ? readString(in) : null;
+
+			Element element = null;
+			if (html != null) {
+				// the infobox is the only thing in the fragment, so it is the first element of the body
+				Document fragment = Jsoup.parse(html, documentURL);
+				element = fragment.body().child(0);
+			}
+			return new Infobox(element, coordinates);
+		} catch (IOException ioe) {
+			System.err.println("\tCouldn't read the cached infobox of " + documentURL + "! Parsing the document instead...");
+			return null;
+		}
+	}
+
+	/**
+	 * Caches an extraction. The infobox is stored without pretty printing so it parses back into exactly the same elements
+	 * 
+	 * @param cache
+	 * @param documentURL
+	 * @param hash
+	 * @param box
+	 */
+	private static void writeCached(PackedStore cache, String documentURL, long hash, Infobox box) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeInt(CACHE_VERSION);
+			out.writeLong(hash);
+			out.writeBoolean(box.element != null);
+			if (box.element != null) {
+				Document.OutputSettings settings = box.element.ownerDocument().outputSettings();
+				boolean prettyPrint = settings.prettyPrint();
+				settings.prettyPrint(false);
+				try {
+					writeString(out, box.element.outerHtml());
+				} finally {
+					settings.prettyPrint(prettyPrint);
+				}
+			}
+			out.writeBoolean(box.coordinates != null);
+			if (box.coordinates != null) writeString(out, box.coordinates);
+		} catch (IOException ioe) {
+			System.err.println("\tCouldn't cache the infobox of " + documentURL + "!");
+			return;
+		}
+		cache.put(documentURL, bytes.toByteArray());
+	}
+
+	/**
+	 * Reads a string written by writeString()
+	 * 
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] utf8 = new byte[in.readInt()];
+		in.readFully(utf8);
+		return new String(utf8, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Writes a string as its length and UTF-8 bytes, since an infobox can be longer than writeUTF() allows
+	 * 
+	 * @param out
+	 * @param s
+	 * @throws IOException
+	 */
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(utf8.length);
+		out.write(utf8);
+	}
+}
@@ -0,0 +1,298 @@
+package csv;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+
+/**
+ * Scans a page's HTML as a stream of tags instead of parsing it into a full DOM. Only the infobox table and the coordinates span are
+ * captured, and scanning stops as soon as both have been found. Pages are written by Jsoup, so their markup is well formed, and only the
+ * captured text is kept in memory. Parsing the whole page keeps the last infobox and coordinates on it, while the scan keeps the first
+ * infobox and the first coordinates before or inside it. An institution's page has one infobox, with the coordinates inside it or repeated
+ * at the top of the page, so both find the same ones, but a page with more than one infobox can differ
+ *
+ * @author Jeremy Gilreath
+ *
+ */
+public class InfoboxScanner {
+	private static final String	INFOBOX_CLASS	= "infobox vcard";
+	private static final String	GPS_CLASS		= "geo-dec";
+	private static final int	MAX_CAPTURE		= 1024 * 1024;
+
+	private final Reader		in;
+	private final char[]		buffer			= new char[8 * 1024];
+	private final StringBuilder	tag				= new StringBuilder();
+	private final String		baseURL;
+	private int					position, limit;
+	private long				scanned;
+
+	private Element				infoElem;
+	private String				coordinates;
+	private boolean				failed;
+
+	/**
+	 * @param in
+	 * @param baseURL
+	 */
+	public InfoboxScanner(Reader in, String baseURL) {
+		this.in = in;
+		this.baseURL = baseURL;
+	}
+
+	/**
+	 * Scans until the infobox and coordinates have both been found or the page ends. Returns false if a capture ran past the end of the
+	 * page or grew too large, in which case the page should be parsed in full instead
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	public boolean scan() throws IOException {
+		int c;
+		String name, attributeClass, html;
+		while ((infoElem == null || coordinates == null) && (c = read()) != -1) {
+			if (c != '<') continue;
+			if (skipComment(null)) continue;
+			if (!readTag()) break;
+			name = tagName();
+			if (name.equals("script") || name.equals("style")) {
+				if (!skipRawText(name, null)) break;
+				continue;
+			}
+			attributeClass = classOf();
+			if (infoElem == null && INFOBOX_CLASS.equals(attributeClass)) {
+				html = capture(name);
+				if (html == null) return false;
+				infoElem = Jsoup.parse(html, baseURL).body().child(0);
+				// the coordinates are often inside the infobox, where the scan skipped over them
+				if (coordinates == null) {
+					Element gpsElem = Util.getElement(infoElem.ownerDocument(), GPS_CLASS);
+					if (gpsElem != null) coordinates = gpsElem.text();
+				}
+			} else if (coordinates == null && GPS_CLASS.equals(attributeClass)) {
+				html = capture(name);
+				if (html == null) return false;
+				coordinates = Jsoup.parse(html, baseURL).body().child(0).text();
+			}
+		}
+		return !failed;
+	}
+
+	/**
+	 * Returns the infobox element, or null if the page doesn't have one
+	 * 
+	 * @return
+	 */
+	public Element getElement() {
+		return infoElem;
+	}
+
+	/**
+	 * Returns the text of the coordinates, or null if the page doesn't have them
+	 * 
+	 * @return
+	 */
+	public String getCoordinates() {
+		return coordinates;
+	}
+
+	/**
+	 * Returns how many characters of the page were read before the scan stopped
+	 * 
+	 * @return
+	 */
+	public long getScanned() {
+		return scanned;
+	}
+
+	/**
+	 * @return the next character, or -1 at the end of the page
+	 * @throws IOException
+	 */
+	private int read() throws IOException {
+		if (position == limit) {
+			limit = in.read(buffer, 0, buffer.length);
+			position = 0;
+			if (limit <= 0) {
+				limit = 0;
+				return -1;
+			}
+			scanned += limit;
+		}
+		return buffer[position++];
+	}
+
+	/**
+	 * Reads the rest of a tag after its '<' up to its closing '>', ignoring any '>' inside quoted attribute values
+	 * 
+	 * @return false if the page ended first
+	 * @throws IOException
+	 */
+	private boolean readTag() throws IOException {
+		tag.setLength(0);
+		int c, quote = 0;
+		while ((c = read()) != -1) {
+			if (quote != 0) {
+				if (c == quote) quote = 0;
+			} else if (c == '"' || c == '\'') {
+				// only quotes that start an attribute value count
+				if (tag.length() > 0 && tag.charAt(tag.length() - 1) == '=') quote = c;
+			} else if (c == '>') {
+				return true;
+			}
+			tag.append((char) c);
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the lower case name of the tag that was just read, starting with '/' for an end tag
+	 * 
+	 * @return
+	 */
+	private String tagName() {
+		int end = 0;
+		char c;
+		while (end < tag.length()) {
+			c = tag.charAt(end);
+			if (Character.isWhitespace(c) || (c == '/' && end > 0)) break;
+			end++;
+		}
+		return tag.substring(0, end).toLowerCase();
+	}
+
+	/**
+	 * Returns the value of the class attribute of the tag that was just read, or null if it doesn't have one
+	 * 
+	 * @return
+	 */
+	private String classOf() {
+		int i = 0, start;
+		int length = tag.length();
+		String attribute;
+		// skip the tag name
+		while (i < length && !Character.isWhitespace(tag.charAt(i)))
+			i++;
+		while (i < length) {
+			while (i < length && (Character.isWhitespace(tag.charAt(i)) || tag.charAt(i) == '/'))
+				i++;
+			start = i;
+			while (i < length && tag.charAt(i) != '=' && !Character.isWhitespace(tag.charAt(i)))
+				i++;
+			attribute = tag.substring(start, i);
+			while (i < length && Character.isWhitespace(tag.charAt(i)))
+				i++;
+			if (i == length || tag.charAt(i) != '=') {
+				if (attribute.equalsIgnoreCase("class")) return "";
+				continue;
+			}
+			i++;
+			while (i < length && Character.isWhitespace(tag.charAt(i)))
+				i++;
+			if (i < length && (tag.charAt(i) == '"' || tag.charAt(i) == '\'')) {
+				char quote = tag.charAt(i++);
+				start = i;
+				while (i < length && tag.charAt(i) != quote)
+					i++;
+			} else {
+				start = i;
+				while (i < length && !Character.isWhitespace(tag.charAt(i)))
+					i++;
+			}
+			// the first class attribute wins, just as when the page is parsed
+			if (attribute.equalsIgnoreCase("class")) return Parser.unescapeEntities(tag.substring(start, i), true);
+			i++;
+		}
+		return null;
+	}
+
+	/**
+	 * Skips a comment if one starts right after the '<' that was just read, copying it to the capture if there is one
+	 * 
+	 * @param capture
+	 * @return whether a comment was skipped
+	 * @throws IOException
+	 */
+	private boolean skipComment(StringBuilder capture) throws IOException {
+		if (limit - position < 3) {
+			// make sure the next three characters are in the buffer
+			System.arraycopy(buffer, position, buffer, 0, limit - position);
+			limit -= position;
+			position = 0;
+			int n;
+			while (limit < 3 && (n = in.read(buffer, limit, buffer.length - limit)) > 0) {
+				limit += n;
+				scanned += n;
+			}
+			if (limit < 3) return false;
+		}
+		if (buffer[position] != '!' || buffer[position + 1] != '-' || buffer[position + 2] != '-') return false;
+
+		if (capture != null) capture.append("!--");
+		position += 3;
+		int c, dashes = 0;
+		while ((c = read()) != -1) {
+			if (capture != null) capture.append((char) c);
+			if (c == '>' && dashes >= 2) return true;
+			dashes = c == '-' ? dashes + 1 : 0;
+		}
+		failed = true;
+		return true;
+	}
+
+	/**
+	 * Skips the contents of a script or style element, whose text can contain anything that looks like a tag, up to its end tag
+	 * 
+	 * @param name
+	 * @param capture
+	 * @return false if the page ended first
+	 * @throws IOException
+	 */
+	private boolean skipRawText(String name, StringBuilder capture) throws IOException {
+		int c;
+		while ((c = read()) != -1) {
+			if (capture != null) capture.append((char) c);
+			if (c != '<') continue;
+			if (!readTag()) return false;
+			if (capture != null) capture.append(tag).append('>');
+			if (tagName().equals("/" + name)) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Captures the element whose start tag was just read, up to its matching end tag
+	 * 
+	 * @param name
+	 * @return the element's HTML, or null if the page ended first or it grew too large
+	 * @throws IOException
+	 */
+	private String capture(String name) throws IOException {
+		StringBuilder html = new StringBuilder(4 * 1024);
+		html.append('<').append(tag).append('>');
+		if (tag.charAt(tag.length() - 1) == '/') return html.toString();
+
+		int c, depth = 1;
+		String inner;
+		while ((c = read()) != -1) {
+			html.append((char) c);
+			if (html.length() > MAX_CAPTURE) break;
+			if (c != '<') continue;
+			if (skipComment(html)) continue;
+			if (!readTag()) break;
+			html.append(tag).append('>');
+			inner = tagName();
+			if (inner.equals("script") || inner.equals("style")) {
+				if (!skipRawText(inner, html)) break;
+			} else if (inner.equals(name)) {
+				if (tag.charAt(tag.length() - 1) != '/') depth++;
+			} else if (inner.equals("/" + name)) {
+				if (--depth == 0) return html.toString();
+			}
+		}
+		failed = true;
+		return null;
+	}
+}
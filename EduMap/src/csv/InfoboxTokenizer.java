@@ -0,0 +1,164 @@
+package csv;
+
+import java.util.ArrayList;
+
+/**
+ * Splits an infobox's HTML into rows, and each row into its header and value, in one pass. Nothing is copied: each row, header and value
+ * is kept as a pair of offsets into the HTML, in a buffer that is reused for the next infobox. A row is the text after a "<tr>" up to the
+ * first "</tr>" before the next "<tr>", a header runs from the row's first "<th" through its first "</th>", and a value from its first
+ * "<td" through its first "</td>", just as when they were split into strings
+ *
+ * @author Jeremy Gilreath
+ *
+ */
+public class InfoboxTokenizer {
+	public static final int		HEADER			= 2;
+	public static final int		VALUE			= 4;
+
+	private static final String	ROW_START		= "<tr>";
+	private static final String	ROW_END			= "</tr>";
+	private static final String	HEADER_START	= "<th";
+	private static final String	HEADER_END		= "</th>";
+	private static final String	VALUE_START		= "<td";
+	private static final String	VALUE_END		= "</td>";
+
+	// for each row: its start and end, its header's start and end, and its value's start and end, or -1 for a missing cell
+	private static final int	FIELDS			= 6;
+
+	private String				text;
+	private int[]				offsets			= new int[FIELDS * 32];
+	private int					rows;
+
+	/**
+	 * Finds the rows and cells of the infobox's HTML, replacing those of the last one
+	 * 
+	 * @param html
+	 * @return the number of rows
+	 */
+	public int tokenize(String html) {
+		text = html;
+		rows = 0;
+		int start = 0, next, end;
+		do {
+			next = html.indexOf(ROW_START, start);
+			end = html.indexOf(ROW_END, start);
+			// the text before the first "<tr>" is a row too if a "</tr>" comes first
+			if (end != -1 && (next == -1 || end < next)) addRow(start, end);
+			start = next + ROW_START.length();
+		} while (next != -1);
+		return rows;
+	}
+
+	/**
+	 * @return the number of rows of the last infobox
+	 */
+	public int getRowCount() {
+		return rows;
+	}
+
+	/**
+	 * Returns whether the row has the cell, either HEADER or VALUE
+	 * 
+	 * @param row
+	 * @param cell
+	 * @return
+	 */
+	public boolean hasCell(int row, int cell) {
+		return offsets[row * FIELDS + cell] != -1;
+	}
+
+	/**
+	 * Returns the offset in the HTML where the cell, either HEADER or VALUE, of the row starts
+	 * 
+	 * @param row
+	 * @param cell
+	 * @return
+	 */
+	public int getStart(int row, int cell) {
+		return offsets[row * FIELDS + cell];
+	}
+
+	/**
+	 * Returns the offset in the HTML where the cell, either HEADER or VALUE, of the row ends
+	 * 
+	 * @param row
+	 * @param cell
+	 * @return
+	 */
+	public int getEnd(int row, int cell) {
+		return offsets[row * FIELDS + cell + 1];
+	}
+
+	/**
+	 * @return the HTML of the last infobox
+	 */
+	public String getText() {
+		return text;
+	}
+
+	/**
+	 * Copies each row out of the HTML, for printing and writing them
+	 * 
+	 * @return
+	 */
+	public ArrayList<String> getRows() {
+		ArrayList<String> rowList = new ArrayList<String>(rows);
+		for (int row = 0; row < rows; row++) {
+			rowList.add(text.substring(offsets[row * FIELDS], offsets[row * FIELDS + 1]));
+		}
+		return rowList;
+	}
+
+	/**
+	 * Adds a row and finds its cells
+	 * 
+	 * @param start
+	 * @param end
+	 */
+	private void addRow(int start, int end) {
+		if ((rows + 1) * FIELDS > offsets.length) {
+			int[] grown = new int[offsets.length * 2];
+			System.arraycopy(offsets, 0, grown, 0, offsets.length);
+			offsets = grown;
+		}
+		int field = rows * FIELDS;
+		offsets[field] = start;
+		offsets[field + 1] = end;
+		findCell(start, end, HEADER_START, HEADER_END, field + HEADER);
+		findCell(start, end, VALUE_START, VALUE_END, field + VALUE);
+		rows++;
+	}
+
+	/**
+	 * Finds a cell within the row, from its first opening tag through its first closing tag. A cell without both, or whose closing tag
+	 * comes before its opening tag, is missing
+	 * 
+	 * @param start
+	 * @param end
+	 * @param opening
+	 * @param closing
+	 * @param field
+	 */
+	private void findCell(int start, int end, String opening, String closing, int field) {
+		int cellStart = indexOf(opening, start, end);
+		int closingIndex = indexOf(closing, start, end);
+		if (cellStart == -1 || closingIndex == -1 || closingIndex + closing.length() < cellStart) {
+			offsets[field] = -1;
+			offsets[field + 1] = -1;
+			return;
+		}
+		offsets[field] = cellStart;
+		offsets[field + 1] = closingIndex + closing.length();
+	}
+
+	/**
+	 * @param s
+	 * @param start
+	 * @param end
+	 * @return the index of the first s that lies wholly within the range, or -1 if there isn't one
+	 */
+	private int indexOf(String s, int start, int end) {
+		int index = text.indexOf(s, start);
+		return index == -1 || index + s.length() > end ? -1 : index;
+	}
+}
@@ -1,10 +1,9 @@
 package csv;
 
-import java.net.InetAddress;
-import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Future;
 
-import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.nodes.Node;
 
@@ -14,11 +13,22 @@ import org.jsoup.nodes.Node;
  */
 public class Institution {
 	private static final String		INST_URL_PREFIX	= "http://en.wikipedia.org";
-	private static final String[]	DOMAINS			= { ".gov", ".mil", ".us", ".edu", ".org", ".net", ".com" };
+	private static final String		INVALID			= "INVALID_INSTITUTION";
+
+	// each thread reuses one tokenizer and its buffer for every infobox it splits
+	private static final ThreadLocal<InfoboxTokenizer>	tokenizers	= new ThreadLocal<InfoboxTokenizer>() {
+		@Override
+		protected InfoboxTokenizer initialValue() {
+			return new InfoboxTokenizer();
+		}
+	};
 
 	private static boolean			writingDoc;
 	private static boolean			fetchOnlineUpdates;
 	private static boolean			fetchOnlineOnly;
+	private static boolean			fetchIncremental;
+	private static boolean			usingInfoboxCache;
+	private static boolean			streamingInfobox;
 	private static boolean			writingElements;
 	private static boolean			printingNodes;
 	private static boolean			writingNodes;
@@ -36,13 +46,20 @@ public class Institution {
 	private static boolean			printingIPs;
 	private static boolean			writingIPs;
 
-	private ArrayList<String>		theseHeaders, theseValues, finalValues;
+	// every institution's headers and values are stored once in these, and each institution keeps their ids and codes
+	private static final ColumnRegistry	columnRegistry	= ColumnRegistry.getShared();
+	private static final Dictionary	valueDictionary		= new Dictionary("Values");
 
-	private StringBuilder			description;
+	// the ids of this institution's columns in id order, and the codes of their values
+	private int[]					columnIds, columnValues;
+	private boolean					validInstitution;
+	// the headers and values as they were parsed, which the description is made from
+	private int[]					parsedHeaders, parsedValues;
 
 	private String					name;
 	private String					gpsLocation;
 	private String					ipAddress;
+	private Future<String>			ipLookup;
 	private String					stateName;
 	private String					stateAbbr;
 
@@ -73,6 +90,9 @@ public class Institution {
 		fetchOnlineUpdates = options[16];
 		fetchOnlineOnly = options[17];
 		printingUTF16Values = options[18];
+		fetchIncremental = options[19];
+		usingInfoboxCache = options[20];
+		streamingInfobox = options[21];
 
 		String stateFolder = "./" + stateAbbr + "/";
 
@@ -83,15 +103,14 @@ public class Institution {
 		}
 		this.stateName = stateName;
 		this.stateAbbr = stateAbbr;
-		description = new StringBuilder();
 
 		final String DOCS_FOLDER = stateFolder + "docs/";
 		String docsFilePath = DOCS_FOLDER + name + ".txt";
-		Document instDoc = Util.getDocument(docsFilePath, INST_URL_PREFIX + instURL, writingDoc, fetchOnlineUpdates,
-				fetchOnlineOnly);
-		if (instDoc != null) {
+		Infobox infobox = Infobox.get(docsFilePath, INST_URL_PREFIX + instURL, writingDoc, fetchOnlineUpdates,
+				fetchOnlineOnly, fetchIncremental, usingInfoboxCache, streamingInfobox);
+		if (infobox != null) {
 
-			Element infoElem = Util.getElement(instDoc, "infobox vcard");
+			Element infoElem = infobox.getElement();
 			if (infoElem != null) {
 				if (writingElements) {
 					final String ELEM_FOLDER = stateFolder + "elem/";
@@ -100,9 +119,8 @@ public class Institution {
 					Util.writeElement(infoElem, elemFilePath);
 				}
 
-				Element gpsElem = Util.getElement(instDoc, "geo-dec");
-				if (gpsElem != null) {
-					gpsLocation = Util.removeOutside(gpsElem.text(), " //");
+				if (infobox.getCoordinates() != null) {
+					gpsLocation = Util.removeOutside(infobox.getCoordinates(), " //");
 				} else {
 					gpsLocation = " ";
 				}
@@ -126,17 +144,20 @@ public class Institution {
 				String infoStr = infoNode.toString().replace("\n", "");
 				if (printingDescription) System.out.println("----- Description for " + name + ":\n\t" + infoStr);
 
-				ArrayList<String> categoryRows = Util.splitCategories(infoStr, "<tr>", "</tr>");
-				if (printingRows) Util.printRows(categoryRows, "Rows", false);
-				if (writingRows) {
-					final String ROWS_FOLDER = stateFolder + "rows/";
-					String rowsFilePath = ROWS_FOLDER + name + ".txt";
-					Util.makeFolders(ROWS_FOLDER);
-					Util.writeRows(categoryRows, rowsFilePath, "Row");
+				InfoboxTokenizer tokens = tokenizers.get();
+				tokens.tokenize(infoStr);
+				if (printingRows || writingRows) {
+					ArrayList<String> categoryRows = tokens.getRows();
+					if (printingRows) Util.printRows(categoryRows, "Rows", false);
+					if (writingRows) {
+						final String ROWS_FOLDER = stateFolder + "rows/";
+						String rowsFilePath = ROWS_FOLDER + name + ".txt";
+						Util.makeFolders(ROWS_FOLDER);
+						Util.writeRows(categoryRows, rowsFilePath, "Row");
+					}
 				}
 
-				String[] categoryHeaders = Util.splitRows(categoryRows, "<th", "</th>");
-				Util.reformat(categoryHeaders, "Name", true);
+				String[] categoryHeaders = Util.reformat(tokens, InfoboxTokenizer.HEADER, "Name", true);
 				if (printingHeaders) Util.printRows(categoryHeaders, "Headers", printingUTF16Values);
 				if (writingHeaders) {
 					final String HEAD_FOLDER = stateFolder + "head/";
@@ -145,8 +166,7 @@ public class Institution {
 					Util.writeRows(categoryHeaders, headFilePath, "Header");
 				}
 
-				String[] categoryValues = Util.splitRows(categoryRows, "<td", "</td>");
-				Util.reformat(categoryValues, name, false);
+				String[] categoryValues = Util.reformat(tokens, InfoboxTokenizer.VALUE, name, false);
 				if (printingValues) Util.printRows(categoryValues, "Values", printingUTF16Values);
 				if (writingValues) {
 					final String VALS_FOLDER = stateFolder + "vals/";
@@ -155,15 +175,20 @@ public class Institution {
 					Util.writeRows(categoryValues, valsFilePath, "Value");
 				}
 
-				ipAddress = getIP(categoryHeaders, categoryValues);
-				if (printingIPs) Util.printString(ipAddress, "IP Address");
+				// the lookup runs in the background and is only waited on once the IP Address is needed
+				ipLookup = HostResolver.resolve(getWebsite(categoryHeaders, categoryValues));
+				if (printingIPs) Util.printString(getIPAddress(), "IP Address");
 				if (writingIPs) {
 					final String IP_FOLDER = stateFolder + "ip/";
 					String ipFilePath = IP_FOLDER + name + ".txt";
 					Util.makeFolders(IP_FOLDER);
-					Util.writeString(ipAddress, "IP Address", ipFilePath);
+					Util.writeString(getIPAddress(), "IP Address", ipFilePath);
+				}
+				parsedHeaders = new int[categoryHeaders.length];
+				for (int i = 0; i < categoryHeaders.length; i++) {
+					parsedHeaders[i] = columnRegistry.getId(categoryHeaders[i]);
 				}
-				updateDescription(categoryHeaders, categoryValues);
+				parsedValues = valueDictionary.encode(categoryValues);
 				initCategories(categoryHeaders, categoryValues);
 			}
 		}
@@ -184,61 +209,58 @@ public class Institution {
 	}
 
 	/**
-	 * Gets the IP Address for the Institution's website
+	 * Gets the URL of the Institution's website, if it has one
 	 * 
 	 * @param headers
 	 * @param values
 	 * @return
 	 */
-	private String getIP(String[] headers, String[] values) {
-		String url = null;
+	private static String getWebsite(String[] headers, String[] values) {
 		for (int i = 0; i < headers.length; i++) {
-			if (headers[i] != null && headers[i].equals("Website")) {
-				url = values[i];
-				break;
-			}
+			if (headers[i] != null && headers[i].equals("Website")) return values[i];
 		}
+		return null;
+	}
 
-		String instIP = " ";
-		if (url != null) {
-			// replace spaces with proper formatting for URLs
-			url = url.replaceAll(" ", "%20");
-			// if the url contains http(s), remove all the http(s):// from the url
-			if (url.contains("http") || url.contains("Http")) url = url.substring(url.indexOf("://") + 3);
-			if (!url.startsWith("www.")) url = "www." + url;
-			// check to see if it has a domain
-			boolean domainFound = false;
-			for (String domain : DOMAINS) {
-				if (url.contains(domain)) {
-					domainFound = true;
-					url = url.substring(0, url.indexOf(domain) + domain.length());
-					break;
-				}
-			}
-			// if a domain wasn't found, default to .edu
-			if (!domainFound) {
-				url = Util.removeBoundaryCharacters(url, true);
-				url += ".edu";
-			}
-			// attempt to connect
-			try {
-				instIP = InetAddress.getByName(url).getHostAddress();
-			} catch (UnknownHostException uhe) {
-				System.err.println("Could not connect to host " + url + "!");
-				// uhe.printStackTrace();
-				// System.exit(1);
-			}
+	/**
+	 * Gets the IP Address for the Institution's website, waiting for its lookup to finish if necessary
+	 * 
+	 * @return
+	 */
+	private String getIPAddress() {
+		if (ipAddress == null) ipAddress = HostResolver.await(ipLookup);
+		return ipAddress;
+	}
+
+	/**
+	 * Fills in the IP Address value once its lookup is done, which is put off until the values are first needed
+	 */
+	private void completeIPAddress() {
+		if (ipLookup != null && columnIds != null && validInstitution) {
+			int ipIndex = ColumnRegistry.indexOf(columnIds, columnRegistry.getId("IP Address"));
+			if (ipIndex >= 0 && columnValues[ipIndex] == Dictionary.NULL) columnValues[ipIndex] = valueDictionary
+					.encode(getIPAddress());
 		}
-		return instIP;
 	}
 
 	/**
-	 * Updates the Institution description based on parsed headers and values
+	 * Prints how many headers and values the institutions share instead of each keeping their own copies
+	 */
+	public static void printDictionaryStats() {
+		System.out.println("\n====================== Institution dictionaries:");
+		columnRegistry.printStats();
+		valueDictionary.printStats();
+	}
+
+	/**
+	 * Makes the Institution description from the parsed headers and values
 	 * 
 	 * @param headers
 	 * @param values
+	 * @return
 	 */
-	private void updateDescription(String[] headers, String[] values) {
+	private String describe(String[] headers, String[] values) {
+		StringBuilder description = new StringBuilder();
 		description.append(name);
 		// determine the length of the longest header
 		int longest = 0;
@@ -258,6 +280,7 @@ public class Institution {
 				description.append("\t" + values[i]);
 			}
 		}
+		return description.toString();
 	}
 
 	/**
@@ -267,9 +290,9 @@ public class Institution {
 	 * @param values
 	 */
 	private void initCategories(String[] headers, String[] values) {
-		boolean validInstitution = true;
-		theseHeaders = new ArrayList<String>();
-		theseValues = new ArrayList<String>();
+		validInstitution = true;
+		ArrayList<String> theseHeaders = new ArrayList<String>();
+		ArrayList<String> theseValues = new ArrayList<String>();
 
 		boolean checkingBoundaries;
 		String header;
@@ -305,10 +328,8 @@ public class Institution {
 								}
 							}
 						}
-						// otherwise, insert a String to notify CSVWriter to remove this out-of-state/un-verifiable institution entirely
+						// otherwise, mark this out-of-state/un-verifiable institution for CSVWriter to remove entirely
 					} else {
-						theseValues = new ArrayList<String>(1);
-						theseValues.add("INVALID_INSTITUTION");
 						validInstitution = false;
 						break;
 					}
@@ -323,15 +344,23 @@ public class Institution {
 		if (validInstitution) {
 			alphabetize(theseHeaders, theseValues);
 
-			insertColumn("Coordinates");
-			insertValue("Coordinates", gpsLocation);
+			insertColumn(theseHeaders, "Coordinates");
+			insertValue(theseHeaders, theseValues, "Coordinates", gpsLocation);
 
-			insertColumn("IP Address");
-			insertValue("IP Address", ipAddress);
+			insertColumn(theseHeaders, "IP Address");
+			insertValue(theseHeaders, theseValues, "IP Address", ipAddress);
+		}
 
-			theseHeaders.trimToSize();
-			theseValues.trimToSize();
+		int[] ids = new int[theseHeaders.size()];
+		int[] codes = new int[theseHeaders.size()];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = columnRegistry.getId(theseHeaders.get(i));
+			codes[i] = valueDictionary.encode(theseValues.get(i));
 		}
+		// the first value of a header that appears more than once is the one that is used
+		int count = ColumnRegistry.sortById(ids, codes);
+		columnIds = Arrays.copyOf(ids, count);
+		columnValues = Arrays.copyOf(codes, count);
 	}
 
 	/**
@@ -359,9 +388,10 @@ public class Institution {
 	/**
 	 * Inserts a new column into the list
 	 * 
+	 * @param theseHeaders
 	 * @param newColumn
 	 */
-	private void insertColumn(String newColumn) {
+	private static void insertColumn(ArrayList<String> theseHeaders, String newColumn) {
 		// if it already contains the header, ignore it
 		if (theseHeaders.contains(newColumn)) {
 			System.err.println("allHeaders already contains the column '" + newColumn + "'! Moving on...");
@@ -374,10 +404,13 @@ public class Institution {
 	/**
 	 * Inserts a new value for this column
 	 * 
+	 * @param theseHeaders
+	 * @param theseValues
 	 * @param column
 	 * @param value
 	 */
-	private void insertValue(String column, String value) {
+	private static void insertValue(ArrayList<String> theseHeaders, ArrayList<String> theseValues, String column,
+			String value) {
 		if (theseValues.size() < theseHeaders.size()) {
 			theseValues.add(value);
 		} else {
@@ -392,38 +425,110 @@ public class Institution {
 	 * @return
 	 */
 	public ArrayList<String> setFinalValues(ArrayList<String> finalHeaders) {
-		finalValues = new ArrayList<String>(finalHeaders.size());
-		String thisValue;
-		// for every header in the final list
-		for (String thatHeader : finalHeaders) {
-			// if that header is contained by this institution
-			if (theseHeaders.contains(thatHeader)) {
-				thisValue = theseValues.get(theseHeaders.indexOf(thatHeader));
-				// insert the value of that header into that position in final values
-				finalValues.add(thisValue);
-				// if this value told us the institution is invalid, stop adding values
-				if (thisValue.equals("INVALID_INSTITUTION")) break;
-			} else {
-				finalValues.add(" ");
+		return setFinalValues(columnRegistry.getLayout(finalHeaders));
+	}
+
+	/**
+	 * Creates the final values for this institution to be used by the CSV Writer, merging its columns into the layout's in one pass
+	 * 
+	 * @param layout
+	 * @return
+	 */
+	public ArrayList<String> setFinalValues(ColumnRegistry.Layout layout) {
+		completeIPAddress();
+		ArrayList<String> finalValues;
+		// an invalid institution has nothing but the value telling CSVWriter to leave it out
+		if (!validInstitution) {
+			finalValues = new ArrayList<String>(1);
+			finalValues.add(INVALID);
+		} else {
+			int[] row = new int[layout.size()];
+			Arrays.fill(row, Dictionary.NULL);
+			layout.merge(columnIds, columnValues, row);
+			finalValues = new ArrayList<String>(row.length);
+			// every header in the final list this institution doesn't have is left blank
+			for (int code : row) {
+				finalValues.add(code == Dictionary.NULL ? " " : valueDictionary.decode(code));
 			}
 		}
-		finalValues.trimToSize();
 		if (printingFinalValues) System.out.println("\nFINAL VALUES: " + finalValues);
 		return finalValues;
 	}
 
+	/**
+	 * Adds this institution's values to the table as a new row, unless the institution is invalid
+	 * 
+	 * @param table
+	 * @return whether a row was added
+	 */
+	public boolean addTo(ResultTable table) {
+		completeIPAddress();
+		if (!validInstitution) return false;
+		int row = table.addRow(columnIds, columnValues);
+		if (printingFinalValues) System.out.println("\nFINAL VALUES: " + table.getRow(row));
+		return true;
+	}
+
+	/**
+	 * Returns the dictionary every institution's values are stored in
+	 * 
+	 * @return
+	 */
+	public static Dictionary getValueDictionary() {
+		return valueDictionary;
+	}
+
+	/**
+	 * Forgets the values of the last run, so they aren't kept for as long as the program runs. Only called between runs, once no
+	 * institution, table or national merge of the last run holds their codes
+	 */
+	public static void resetValueDictionary() {
+		valueDictionary.clear();
+	}
+
 	/**
 	 * @return
 	 */
 	public ArrayList<String> getHeaders() {
-		return theseHeaders;
+		if (columnIds == null) return null;
+		ArrayList<String> headers = new ArrayList<String>(columnIds.length);
+		for (int id : columnIds) {
+			headers.add(columnRegistry.getHeader(id));
+		}
+		return headers;
+	}
+
+	/**
+	 * Returns the ids of the institution's columns in id order, or null if it doesn't have any
+	 * 
+	 * @return
+	 */
+	public int[] getColumnIds() {
+		return columnIds;
+	}
+
+	/**
+	 * @return whether the institution gets a row in the CSV file
+	 */
+	public boolean isValid() {
+		return validInstitution;
 	}
 
 	/**
 	 * @return
 	 */
 	public ArrayList<String> getValues() {
-		return theseValues;
+		completeIPAddress();
+		if (columnIds == null) return null;
+		ArrayList<String> values = new ArrayList<String>(columnValues.length);
+		if (!validInstitution) {
+			values.add(INVALID);
+			return values;
+		}
+		for (int code : columnValues) {
+			values.add(valueDictionary.decode(code));
+		}
+		return values;
 	}
 
 	/**
@@ -435,6 +540,13 @@ public class Institution {
 
 	@Override
 	public String toString() {
-		return description.toString();
+		if (parsedHeaders == null) return "";
+		String[] headers = new String[parsedHeaders.length];
+		String[] values = new String[parsedValues.length];
+		for (int i = 0; i < headers.length; i++) {
+			headers[i] = columnRegistry.getHeader(parsedHeaders[i]);
+			values[i] = valueDictionary.decode(parsedValues[i]);
+		}
+		return describe(headers, values);
 	}
 }
@@ -0,0 +1,166 @@
+package csv;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Merges the rows of every state into one national dataset, with a State column and the union of every state's columns. Each state is
+ * merged by the thread that finished it, as soon as it is finished, by encoding its rows as column ids and value codes. Only handing the
+ * encoded rows over is synchronized, so states merge concurrently. A state can come from a run or from the newest CSV file in its csv
+ * folder, without fetching it again
+ *
+ * @author Jeremy Gilreath
+ *
+ */
+public class NationalMerger {
+	public static final String							STATE		= "State";
+
+	private static final NationalMerger					shared		= new NationalMerger();
+
+	private final ColumnRegistry						registry	= ColumnRegistry.getShared();
+	private final Dictionary							values		= Institution.getValueDictionary();
+	private final int									stateId		= registry.getId(STATE);
+	private final BitSet								union		= new BitSet();
+	// each state's rows, by state abbreviation, each one its column ids and value codes in id order
+	private final TreeMap<String, ArrayList<int[][]>>	states		= new TreeMap<String, ArrayList<int[][]>>();
+	private int											rows;
+
+	/**
+	 * Encodes a state's rows as they are added
+	 */
+	private class StateRows implements RowSink {
+		private final int[]					columnIds;
+		private final int					stateCode;
+		private final BitSet				stateUnion	= new BitSet();
+		private final ArrayList<int[][]>	encoded		= new ArrayList<int[][]>();
+
+		/**
+		 * @param stateName
+		 * @param columns
+		 */
+		private StateRows(String stateName, List<String> columns) {
+			columnIds = new int[columns.size()];
+			for (int c = 0; c < columnIds.length; c++) {
+				// the merged State column takes the place of any the state had
+				columnIds[c] = columns.get(c).equals(STATE) ? Dictionary.NULL : registry.getId(columns.get(c));
+				// a column stays in the union even if every row is blank, and pruning decides whether it is written
+				if (columnIds[c] != Dictionary.NULL) stateUnion.set(columnIds[c]);
+			}
+			stateUnion.set(stateId);
+			stateCode = values.encode(stateName);
+		}
+
+		@Override
+		public void addRow(List<String> row) {
+			int[] ids = new int[columnIds.length + 1];
+			int[] codes = new int[ids.length];
+			int count = 0;
+			String value;
+			for (int c = 0; c < columnIds.length; c++) {
+				value = row.get(c);
+				if (columnIds[c] == Dictionary.NULL || value == null || value.equals(" ")) continue;
+				ids[count] = columnIds[c];
+				codes[count++] = values.encode(value);
+			}
+			ids[count] = stateId;
+			codes[count++] = stateCode;
+			count = ColumnRegistry.sortById(ids, codes);
+			encoded.add(new int[][] { Arrays.copyOf(ids, count), Arrays.copyOf(codes, count) });
+		}
+	}
+
+	/**
+	 * @return the merger that every state shares
+	 */
+	public static NationalMerger getShared() {
+		return shared;
+	}
+
+	/**
+	 * Forgets every state merged so far, so a new run starts from none
+	 */
+	public synchronized void reset() {
+		states.clear();
+		union.clear();
+		rows = 0;
+	}
+
+	/**
+	 * Merges a state's rows, replacing any merged for it before
+	 *
+	 * @param stateAbbr
+	 * @param stateName
+	 * @param csvSource
+	 * @throws IOException
+	 */
+	public void add(String stateAbbr, String stateName, CSVSource csvSource) throws IOException {
+		StateRows stateRows = new StateRows(stateName, csvSource.getColumns());
+		csvSource.export(stateRows);
+		add(stateAbbr, stateRows);
+	}
+
+	/**
+	 * Merges the rows of a state's CSV file, replacing any merged for it before
+	 *
+	 * @param stateAbbr
+	 * @param stateName
+	 * @param csvFile
+	 * @throws IOException
+	 */
+	public void add(String stateAbbr, String stateName, File csvFile) throws IOException {
+		try (CSVReader reader = new CSVReader(csvFile.toPath())) {
+			StateRows stateRows = new StateRows(stateName, reader.getColumns());
+			reader.read(stateRows);
+			add(stateAbbr, stateRows);
+		}
+	}
+
+	/**
+	 * Hands a state's encoded rows over
+	 *
+	 * @param stateAbbr
+	 * @param stateRows
+	 */
+	private synchronized void add(String stateAbbr, StateRows stateRows) {
+		ArrayList<int[][]> replaced = states.put(stateAbbr, stateRows.encoded);
+		if (replaced != null) rows -= replaced.size();
+		rows += stateRows.encoded.size();
+		union.or(stateRows.stateUnion);
+	}
+
+	/**
+	 * @return the number of states merged
+	 */
+	public synchronized int getStateCount() {
+		return states.size();
+	}
+
+	/**
+	 * Returns a table of every merged row, with the states in order of their abbreviations and each state's rows in their own order.
+	 * Name and State are the first columns, and the rest are alphabetized
+	 *
+	 * @return
+	 */
+	public synchronized ResultTable getTable() {
+		ArrayList<int[]> ids = new ArrayList<int[]>(1);
+		ids.add(union.stream().toArray());
+		ArrayList<String> columns = Util.alphabetize(registry.getUnion(ids));
+		columns.remove(STATE);
+		columns.add(0, STATE);
+		columns.remove("Name");
+		columns.add(0, "Name");
+		ResultTable table = new ResultTable(columns, values, rows);
+		for (Map.Entry<String, ArrayList<int[][]>> state : states.entrySet()) {
+			for (int[][] row : state.getValue()) {
+				table.addRow(row[0], row[1]);
+			}
+		}
+		return table;
+	}
+}
@@ -0,0 +1,234 @@
+package csv;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An append-only store that packs many small files into one data file per state, with an index of each entry's offset and length by
+ * key. Lookups are a hash map probe, and entries are read from a memory mapping of the data file instead of opening a file per entry
+ *
+ * @author Jeremy Gilreath
+ *
+ */
+public class PackedStore {
+	private static final String									DATA_FILE	= "store.pack";
+	private static final String									INDEX_FILE	= "store.idx";
+
+	private static final ConcurrentHashMap<String, PackedStore>	stores		= new ConcurrentHashMap<String, PackedStore>();
+
+	private final ConcurrentHashMap<String, long[]>				index		= new ConcurrentHashMap<String, long[]>();
+
+	private final String										folder;
+	private final RandomAccessFile								data;
+	private final FileChannel									channel;
+	private final DataOutputStream								indexOut;
+
+	private volatile MappedByteBuffer							mapped;
+
+	/**
+	 * Opens the store in the folder, loading its index and creating its files if they don't exist yet
+	 * 
+	 * @param folder
+	 * @throws IOException
+	 */
+	private PackedStore(String folder) throws IOException {
+		this.folder = folder;
+		Util.makeFolders(folder);
+		data = new RandomAccessFile(new File(folder, DATA_FILE), "rw");
+		channel = data.getChannel();
+		File indexFile = new File(folder, INDEX_FILE);
+		if (indexFile.exists()) loadIndex(indexFile, channel.size());
+		indexOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile, true)));
+		map();
+	}
+
+	/**
+	 * Returns the store for a folder, opening it the first time it is asked for
+	 * 
+	 * @param folder
+	 * @return
+	 */
+	public static PackedStore open(String folder) {
+		PackedStore store = stores.get(folder);
+		if (store == null) {
+			synchronized (stores) {
+				store = stores.get(folder);
+				if (store == null) {
+					try {
+						store = new PackedStore(folder);
+					} catch (IOException ioe) {
+						System.err.println("Couldn't open the packed store in " + folder + "!");
+						ioe.printStackTrace();
+						System.exit(1);
+					}
+					stores.put(folder, store);
+				}
+			}
+		}
+		return store;
+	}
+
+	/**
+	 * Closes every open store, so the next run reopens them from disk
+	 */
+	public static void closeAll() {
+		synchronized (stores) {
+			for (PackedStore store : stores.values()) {
+				store.close();
+			}
+			stores.clear();
+		}
+	}
+
+	/**
+	 * Reads every index record, with later records for a key replacing earlier ones. A record cut short by a crash, or pointing past the
+	 * end of the data file, is ignored
+	 * 
+	 * @param indexFile
+	 * @param dataSize
+	 * @throws IOException
+	 */
+	private void loadIndex(File indexFile, long dataSize) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+			String key;
+			long offset;
+			int length;
+			while (true) {
+				key = in.readUTF();
+				offset = in.readLong();
+				length = in.readInt();
+				if (offset + length <= dataSize) index.put(key, new long[] { offset, length });
+			}
+		} catch (EOFException eofe) {
+			// the end of the index
+		}
+	}
+
+	/**
+	 * Maps the whole data file into memory
+	 * 
+	 * @throws IOException
+	 */
+	private synchronized void map() throws IOException {
+		long size = channel.size();
+		if (size > Integer.MAX_VALUE) throw new IOException(folder + DATA_FILE + " is too large to map!");
+		mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+	}
+
+	/**
+	 * @param key
+	 * @return
+	 */
+	public boolean contains(String key) {
+		return index.containsKey(key);
+	}
+
+	/**
+	 * Returns a read-only view of the entry's bytes in the mapped data file, or null if there is no such entry
+	 * 
+	 * @param key
+	 * @return
+	 */
+	public ByteBuffer get(String key) {
+		long[] entry = index.get(key);
+		if (entry == null) return null;
+
+		MappedByteBuffer view = mapped;
+		if (entry[0] + entry[1] > view.capacity()) {
+			// the entry was appended after the data file was last mapped
+			try {
+				map();
+			} catch (IOException ioe) {
+				System.err.println("Couldn't map the packed store in " + folder + "!");
+				ioe.printStackTrace();
+				System.exit(1);
+			}
+			view = mapped;
+		}
+		ByteBuffer bytes = view.duplicate();
+		bytes.position((int) entry[0]);
+		bytes.limit((int) (entry[0] + entry[1]));
+		return bytes.slice().asReadOnlyBuffer();
+	}
+
+	/**
+	 * Appends an entry, replacing any earlier entry with the same key. The data is written before its index record, so a crash in between
+	 * only loses this entry
+	 * 
+	 * @param key
+	 * @param bytes
+	 */
+	public synchronized void put(String key, byte[] bytes) {
+		try {
+			long offset = channel.size();
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			while (buffer.hasRemaining()) {
+				channel.write(buffer, offset + buffer.position());
+			}
+			indexOut.writeUTF(key);
+			indexOut.writeLong(offset);
+			indexOut.writeInt(bytes.length);
+			indexOut.flush();
+			index.put(key, new long[] { offset, bytes.length });
+		} catch (IOException ioe) {
+			System.err.println("Couldn't write " + key + " to the packed store in " + folder + "!");
+			ioe.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Closes the data and index files
+	 */
+	private synchronized void close() {
+		try {
+			indexOut.close();
+			data.close();
+		} catch (IOException ioe) {
+			System.err.println("Couldn't close the packed store in " + folder + "!");
+			ioe.printStackTrace();
+		}
+	}
+
+	/**
+	 * Reads a ByteBuffer as an InputStream without copying it
+	 */
+	public static class BufferStream extends InputStream {
+		private final ByteBuffer	bytes;
+
+		public BufferStream(ByteBuffer bytes) {
+			this.bytes = bytes;
+		}
+
+		@Override
+		public int read() {
+			return bytes.hasRemaining() ? bytes.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (!bytes.hasRemaining()) return -1;
+			len = Math.min(len, bytes.remaining());
+			bytes.get(b, off, len);
+			return len;
+		}
+
+		@Override
+		public int available() {
+			return bytes.remaining();
+		}
+	}
+}
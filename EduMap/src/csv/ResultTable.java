@@ -0,0 +1,214 @@
+package csv;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * The values of a state's institutions for its CSV file, kept by column: each column has an array of dictionary codes, one per row, and a
+ * bitmap of the rows that have no value for it. Column-wise work like finding empty columns only reads the arrays of the columns involved,
+ * and rows are only made into text as they are written
+ *
+ * @author Jeremy Gilreath
+ *
+ */
+public class ResultTable implements CSVSource {
+	// what a missing value is written as
+	private static final String		MISSING	= " ";
+
+	private final ArrayList<String>	columns;
+	private final Dictionary		values;
+	private final ColumnStats		stats	= new ColumnStats();
+	private ColumnRegistry.Layout	layout;
+	private int[][]					codes;
+	private long[][]				missing;
+	private int						capacity;
+	private int						rows;
+
+	/**
+	 * @param columns
+	 * @param values
+	 * @param capacity
+	 */
+	public ResultTable(ArrayList<String> columns, Dictionary values, int capacity) {
+		this.columns = new ArrayList<String>(columns);
+		this.values = values;
+		layout = ColumnRegistry.getShared().getLayout(this.columns);
+		this.capacity = capacity = Math.max(capacity, 1);
+		codes = new int[this.columns.size()][capacity];
+		missing = new long[this.columns.size()][(capacity + 63) / 64];
+	}
+
+	/**
+	 * Adds a row from an institution's columns and value codes, both in id order. Columns it doesn't have are missing
+	 *
+	 * @param columnIds
+	 * @param columnValues
+	 * @return the row's index
+	 */
+	public synchronized int addRow(int[] columnIds, int[] columnValues) {
+		if (rows == capacity) grow();
+		int[] row = new int[codes.length];
+		Arrays.fill(row, Dictionary.NULL);
+		layout.merge(columnIds, columnValues, row);
+		for (int i = 0; i < columnIds.length; i++) {
+			stats.add(columnIds[i], values.decode(columnValues[i]));
+		}
+		for (int c = 0; c < codes.length; c++) {
+			codes[c][rows] = row[c];
+			if (row[c] == Dictionary.NULL) missing[c][rows >> 6] |= 1L << rows;
+		}
+		return rows++;
+	}
+
+	/**
+	 * Doubles the number of rows every column can hold
+	 */
+	private void grow() {
+		capacity *= 2;
+		for (int c = 0; c < codes.length; c++) {
+			codes[c] = Arrays.copyOf(codes[c], capacity);
+			missing[c] = Arrays.copyOf(missing[c], (capacity + 63) / 64);
+		}
+	}
+
+	/**
+	 * @return the headers of the columns
+	 */
+	@Override
+	public ArrayList<String> getColumns() {
+		return columns;
+	}
+
+	/**
+	 * @return the statistics of the values in each column, gathered as the rows were added
+	 */
+	@Override
+	public ColumnStats getStats() {
+		return stats;
+	}
+
+	/**
+	 * @return the number of columns
+	 */
+	public int getColumnCount() {
+		return columns.size();
+	}
+
+	/**
+	 * @return the number of rows
+	 */
+	public int getRowCount() {
+		return rows;
+	}
+
+	/**
+	 * Returns whether the row has no value for the column
+	 *
+	 * @param row
+	 * @param column
+	 * @return
+	 */
+	public boolean isMissing(int row, int column) {
+		return (missing[column][row >> 6] & 1L << row) != 0;
+	}
+
+	/**
+	 * Returns the value of the row for the column, or " " if it doesn't have one
+	 *
+	 * @param row
+	 * @param column
+	 * @return
+	 */
+	public String getValue(int row, int column) {
+		return isMissing(row, column) ? MISSING : values.decode(codes[column][row]);
+	}
+
+	/**
+	 * Returns the values of a row in column order
+	 *
+	 * @param row
+	 * @return
+	 */
+	public ArrayList<String> getRow(int row) {
+		ArrayList<String> rowValues = new ArrayList<String>(columns.size());
+		for (int c = 0; c < columns.size(); c++) {
+			rowValues.add(getValue(row, c));
+		}
+		return rowValues;
+	}
+
+	/**
+	 * Removes every column that is empty in every row, along with its arrays. The statistics already know which columns are empty, so no
+	 * row is looked at
+	 *
+	 * @return the headers of the columns that were removed
+	 */
+	@Override
+	public synchronized ArrayList<String> removeEmptyColumns() {
+		ArrayList<String> removed = new ArrayList<String>();
+		int kept = 0;
+		for (int c = 0; c < columns.size(); c++) {
+			if (stats.isEmpty(columns.get(c))) {
+				removed.add(columns.get(c));
+				continue;
+			}
+			codes[kept] = codes[c];
+			missing[kept] = missing[c];
+			columns.set(kept++, columns.get(c));
+		}
+		if (removed.isEmpty()) return removed;
+		codes = Arrays.copyOf(codes, kept);
+		missing = Arrays.copyOf(missing, kept);
+		columns.subList(kept, columns.size()).clear();
+		layout = ColumnRegistry.getShared().getLayout(columns);
+		return removed;
+	}
+
+	/**
+	 * Writes the headers as a CSV line, without a line separator
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeHeader(CSVOutput out) throws IOException {
+		out.writeLine(columns);
+	}
+
+	/**
+	 * Writes a row as a CSV line, without a line separator
+	 *
+	 * @param out
+	 * @param row
+	 * @throws IOException
+	 */
+	public void writeRow(CSVOutput out, int row) throws IOException {
+		for (int c = 0; c < columns.size(); c++) {
+			if (c != 0) out.write(',');
+			out.writeCell(getValue(row, c));
+		}
+	}
+
+	/**
+	 * Adds each row to the sink
+	 */
+	@Override
+	public void export(RowSink sink) {
+		for (int row = 0; row < rows; row++) {
+			sink.addRow(getRow(row));
+		}
+	}
+
+	/**
+	 * Writes the header line and then each row on a new line, adding each row to the sink as it is written
+	 */
+	@Override
+	public void write(CSVOutput writer, RowSink sink) throws IOException {
+		writeHeader(writer);
+		for (int row = 0; row < rows; row++) {
+			writer.newLine();
+			writeRow(writer, row);
+			if (sink != null) sink.addRow(getRow(row));
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package csv;
+
+import java.util.List;
+
+/**
+ * Anything the rows of a state's CSV file can be added to, one at a time
+ *
+ * @author Jeremy Gilreath
+ *
+ */
+public interface RowSink {
+	/**
+	 * Adds a row with a value for each column, in column order. A null or " " value is missing. The row may be reused for the next one
+	 * once this returns
+	 *
+	 * @param row
+	 */
+	public void addRow(List<String> row);
+}
@@ -0,0 +1,457 @@
+package csv;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Spills each institution's row to a file in the state's csv folder as soon as the institution is done, instead of keeping every
+ * institution until the whole state is. Rows are spilled in whatever order the institutions finish, each tagged with its index in the
+ * list, and only where each row starts in the file is kept in memory. Once the columns are known, the CSV file is written in one pass that
+ * reads the rows back by their position, in the order the institutions were listed. Each row is flushed as it is spilled, so if a run
+ * crashes, the next run of the state can still write out every row that was finished
+ *
+ * @author Jeremy Gilreath
+ *
+ */
+public class RowSpill implements CSVSource {
+	private static final String		SPILL_FILE	= "(SPILL).dat";
+	private static final int		MAGIC		= 0x45535052;
+	private static final int		VERSION		= 2;
+	private static final int		BUFFER_SIZE	= 64 * 1024;
+
+	private final File				file;
+	private final boolean			printingRows;
+	private final ColumnRegistry	registry	= ColumnRegistry.getShared();
+	// every column any institution had, even ones that are left out
+	private final BitSet			union		= new BitSet();
+	// columns left out of the CSV file
+	private final BitSet			removed		= new BitSet();
+	private final ColumnStats		stats		= new ColumnStats();
+	// where each institution's row starts in the file, by its index in the list, or 0 for institutions without one
+	private long[]					positions	= new long[64];
+	private DataOutputStream		out;
+	// where the next row will start, after the magic number and version
+	private long					size		= 8;
+	private int						rows;
+
+	/**
+	 * @param file
+	 * @param printingRows
+	 */
+	private RowSpill(File file, boolean printingRows) {
+		this.file = file;
+		this.printingRows = printingRows;
+	}
+
+	/**
+	 * Starts a new spill in the folder, replacing any that is there
+	 *
+	 * @param folderPath
+	 * @param printingRows
+	 * @return
+	 */
+	public static RowSpill create(String folderPath, boolean printingRows) {
+		Util.makeFolders(folderPath);
+		RowSpill spill = new RowSpill(new File(folderPath + SPILL_FILE), printingRows);
+		try {
+			spill.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spill.file)));
+			spill.out.writeInt(MAGIC);
+			spill.out.writeInt(VERSION);
+			spill.out.flush();
+		} catch (IOException ioe) {
+			System.err.println("File " + spill.file + " couldn't be read/written to!");
+			ioe.printStackTrace();
+			System.exit(1);
+		}
+		return spill;
+	}
+
+	/**
+	 * Returns whether a run that didn't finish left a spill in the folder
+	 *
+	 * @param folderPath
+	 * @return
+	 */
+	public static boolean exists(String folderPath) {
+		return new File(folderPath + SPILL_FILE).isFile();
+	}
+
+	/**
+	 * Opens the spill a run that didn't finish left in the folder, finding its columns from the rows it has. A spill without a whole
+	 * header, left by a run that crashed before spilling anything, has no rows
+	 *
+	 * @param folderPath
+	 * @return
+	 * @throws IOException
+	 */
+	public static RowSpill recover(String folderPath) throws IOException {
+		final RowSpill spill = new RowSpill(new File(folderPath + SPILL_FILE), false);
+		spill.scan(new RowHandler() {
+
+			@Override
+			public void handle(String[] headers, String[] values) {
+				for (String header : headers) {
+					spill.union.set(spill.registry.getId(header));
+				}
+				spill.stats.add(Arrays.asList(headers), Arrays.asList(values));
+				spill.rows++;
+			}
+		});
+		return spill;
+	}
+
+	/**
+	 * Spills the row of the institution at the index in the list as soon as it is done, whichever institutions before it are still
+	 * running. An institution without a row, or a null one, isn't spilled
+	 *
+	 * @param index
+	 * @param inst
+	 */
+	public void add(int index, Institution inst) {
+		if (inst == null || inst.getColumnIds() == null) return;
+		// the record is made before waiting for the lock, since it may wait for the IP Address lookup
+		ArrayList<String> values = inst.getValues();
+		ArrayList<String> headers = inst.getHeaders();
+		synchronized (this) {
+			for (int id : inst.getColumnIds()) {
+				union.set(id);
+			}
+		}
+		if (!inst.isValid()) return;
+		byte[] record = toRecord(headers, values);
+		stats.add(headers, values);
+		synchronized (this) {
+			try {
+				out.writeInt(index);
+				out.writeInt(record.length);
+				out.write(record);
+				out.flush();
+			} catch (IOException ioe) {
+				System.err.println("File " + file + " couldn't be read/written to!");
+				ioe.printStackTrace();
+				System.exit(1);
+			}
+			setPosition(index, size);
+			size += 8 + record.length;
+			rows++;
+		}
+	}
+
+	/**
+	 * Remembers where the row of the institution at the index starts in the file
+	 *
+	 * @param index
+	 * @param position
+	 */
+	private void setPosition(int index, long position) {
+		if (index >= positions.length) positions = Arrays.copyOf(positions, Math.max(positions.length * 2, index + 1));
+		positions[index] = position;
+	}
+
+	/**
+	 * Closes the spill once every institution has been added
+	 */
+	public synchronized void finish() {
+		try {
+			out.close();
+		} catch (IOException ioe) {
+			System.err.println("File " + file + " couldn't be read/written to!");
+			ioe.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Deletes the spill once its CSV file is written
+	 */
+	public void delete() {
+		if (!file.delete()) System.err.println("\tCouldn't delete " + file + "!");
+	}
+
+	/**
+	 * @return the number of rows spilled
+	 */
+	public synchronized int getRowCount() {
+		return rows;
+	}
+
+	/**
+	 * @return the statistics of the values in each column, gathered as the rows were spilled
+	 */
+	@Override
+	public ColumnStats getStats() {
+		return stats;
+	}
+
+	/**
+	 * Leaves every column that no spilled row has a value for out of the CSV file
+	 */
+	@Override
+	public synchronized ArrayList<String> removeEmptyColumns() {
+		ArrayList<String> headers = new ArrayList<String>();
+		for (int id = union.nextSetBit(0); id >= 0; id = union.nextSetBit(id + 1)) {
+			if (removed.get(id) || !stats.isEmpty(registry.getHeader(id))) continue;
+			removed.set(id);
+			headers.add(registry.getHeader(id));
+		}
+		return headers;
+	}
+
+	/**
+	 * Returns the headers of every column any institution had that isn't left out, alphabetized with Name first
+	 */
+	@Override
+	public synchronized ArrayList<String> getColumns() {
+		BitSet kept = (BitSet) union.clone();
+		kept.andNot(removed);
+		ArrayList<int[]> ids = new ArrayList<int[]>(1);
+		ids.add(kept.stream().toArray());
+		ArrayList<String> columns = Util.alphabetize(registry.getUnion(ids));
+		// Name always goes first, unless it was left out
+		if (columns.remove("Name") || !removed.get(registry.getId("Name"))) columns.add(0, "Name");
+		return columns;
+	}
+
+	/**
+	 * Writes the CSV file in one pass over the spilled rows, adding each row to the sink in the same pass
+	 */
+	@Override
+	public void write(final CSVOutput writer, final RowSink sink) throws IOException {
+		ArrayList<String> columns = getColumns();
+		writer.writeLine(columns);
+		readRows(columns, new RowHandler() {
+
+			@Override
+			public void handle(String[] headers, String[] row) throws IOException {
+				writer.newLine();
+				writer.writeLine(Arrays.asList(row));
+				if (sink != null) sink.addRow(Arrays.asList(row));
+				if (printingRows) System.out.print(Util.arrayListToString(new ArrayList<String>(Arrays.asList(row))) + "\n");
+			}
+		});
+	}
+
+	/**
+	 * Adds the spilled rows to the sink in one pass over the spill
+	 */
+	@Override
+	public void export(final RowSink sink) throws IOException {
+		readRows(getColumns(), new RowHandler() {
+
+			@Override
+			public void handle(String[] headers, String[] row) {
+				sink.addRow(Arrays.asList(row));
+			}
+		});
+	}
+
+	/**
+	 * Reads the spill from the start, handing each row to the handler with its values in the order of the columns, and " " for the ones
+	 * it doesn't have. The same array is handed over for every row
+	 *
+	 * @param columns
+	 * @param handler
+	 * @throws IOException
+	 */
+	private void readRows(ArrayList<String> columns, final RowHandler handler) throws IOException {
+		final String[] headers = columns.toArray(new String[columns.size()]);
+		final HashMap<String, Integer> positions = new HashMap<String, Integer>();
+		for (int c = 0; c < headers.length; c++) {
+			positions.put(headers[c], c);
+		}
+		final String[] row = new String[headers.length];
+		read(new RowHandler() {
+
+			@Override
+			public void handle(String[] rowHeaders, String[] values) throws IOException {
+				for (int c = 0; c < row.length; c++) {
+					row[c] = " ";
+				}
+				Integer position;
+				for (int i = 0; i < rowHeaders.length; i++) {
+					position = positions.get(rowHeaders[i]);
+					if (position != null) row[position] = values[i] == null ? " " : values[i];
+				}
+				handler.handle(headers, row);
+			}
+		});
+	}
+
+	/**
+	 * Something done with each spilled row in turn
+	 */
+	private interface RowHandler {
+		/**
+		 * @param headers
+		 * @param values
+		 * @throws IOException
+		 */
+		public void handle(String[] headers, String[] values) throws IOException;
+	}
+
+	/**
+	 * Reads the spill from the start in the order it was spilled, remembering where each row starts and handing it to the handler. A row
+	 * that was only partly spilled when a run crashed ends it, and a spill whose header is cut short or unknown has no rows
+	 *
+	 * @param handler
+	 * @throws IOException
+	 */
+	private void scan(RowHandler handler) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE))) {
+			try {
+				if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+					System.err.println("\t" + file + " isn't a spill this version can read! Treating it as empty...");
+					return;
+				}
+			} catch (EOFException eofe) {
+				System.err.println("\t" + file + " was left before its header was written! Treating it as empty...");
+				return;
+			}
+			int index;
+			byte[] record;
+			while (true) {
+				try {
+					index = in.readInt();
+					record = new byte[in.readInt()];
+					in.readFully(record);
+				} catch (EOFException eofe) {
+					return;
+				}
+				setPosition(index, size);
+				size += 8 + record.length;
+				handle(record, handler);
+			}
+		}
+	}
+
+	/**
+	 * Reads the rows back by their position, handing them to the handler in the order the institutions were listed. Rows mostly finish
+	 * close to that order, so the file is read through a buffer, skipping forward over rows that come later, and only moved back to a
+	 * row that finished ahead of an earlier one
+	 *
+	 * @param handler
+	 * @throws IOException
+	 */
+	private void read(RowHandler handler) throws IOException {
+		long[] starts;
+		synchronized (this) {
+			starts = positions;
+		}
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			DataInputStream in = null;
+			// where the buffered stream is in the file
+			long at = -1;
+			byte[] record;
+			for (int index = 0; index < starts.length; index++) {
+				if (starts[index] == 0) continue;
+				if (in != null && starts[index] >= at && starts[index] - at < BUFFER_SIZE) {
+					in.skipBytes((int) (starts[index] - at));
+				} else {
+					channel.position(starts[index]);
+					in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE));
+				}
+				if (in.readInt() != index) throw new IOException(file + " doesn't have row " + index + " where it was spilled!");
+				record = new byte[in.readInt()];
+				in.readFully(record);
+				at = starts[index] + 8 + record.length;
+				handle(record, handler);
+			}
+		}
+	}
+
+	/**
+	 * Hands a row's record to the handler as its headers and values
+	 *
+	 * @param record
+	 * @param handler
+	 * @throws IOException
+	 */
+	private static void handle(byte[] record, RowHandler handler) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+		String[] headers = new String[in.readInt()];
+		String[] values = new String[headers.length];
+		for (int i = 0; i < headers.length; i++) {
+			headers[i] = readString(in);
+			values[i] = readString(in);
+		}
+		handler.handle(headers, values);
+	}
+
+	/**
+	 * Makes the record of a row: the number of columns, then each header and value. It is spilled after the institution's index and the
+	 * record's length
+	 *
+	 * @param headers
+	 * @param values
+	 * @return
+	 */
+	private byte[] toRecord(List<String> headers, List<String> values) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream record = new DataOutputStream(bytes)) {
+			record.writeInt(headers.size());
+			for (int i = 0; i < headers.size(); i++) {
+				writeString(record, headers.get(i));
+				writeString(record, values.get(i));
+			}
+		} catch (IOException ioe) {
+			// writing to memory can't fail
+			throw new RuntimeException(ioe);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Reads a string written by writeString()
+	 *
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length == -1) return null;
+		byte[] utf8 = new byte[length];
+		in.readFully(utf8);
+		return new String(utf8, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Writes a string as its length and UTF-8 bytes, or a length of -1 for null
+	 *
+	 * @param out
+	 * @param s
+	 * @throws IOException
+	 */
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		if (s == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(utf8.length);
+		out.write(utf8);
+	}
+
+	@Override
+	public String toString() {
+		return file.getPath();
+	}
+}
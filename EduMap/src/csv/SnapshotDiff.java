@@ -0,0 +1,329 @@
+package csv;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds what changed between two CSV files of a state: which institutions were added or removed, and which cells of the rest changed.
+ * Rows are matched by Name, and columns by header, so the files can have different columns; a column a file doesn't have is blank in it.
+ * Each file is read as a stream. The old file is read once to keep one 64-bit hash of each row by Name, the sum of a hash of each of its
+ * non-blank cells with its header, so the order of the columns doesn't matter. Each new row's hash is compared against those, and only the
+ * values of the new rows whose hash differs are kept. The old file is read again for just those rows, to find which of their cells
+ * changed. Time is linear in the rows, and memory is the old file's names and one hash per row, plus the rows that changed
+ *
+ * @author Jeremy Gilreath
+ *
+ */
+public class SnapshotDiff {
+	private static final String							BLANK			= " ";
+
+	private final File									oldFile;
+	private final File									newFile;
+	private ArrayList<String>							columns;
+	private final ArrayList<String>						addedColumns	= new ArrayList<String>();
+	private final ArrayList<String>						removedColumns	= new ArrayList<String>();
+	private final ArrayList<String>						added			= new ArrayList<String>();
+	private final ArrayList<String>						removed			= new ArrayList<String>();
+	// the changed cells by row key in the new file's order, each one the column, the old value and the new value
+	private final LinkedHashMap<String, List<String[]>>	changed			= new LinkedHashMap<String, List<String[]>>();
+	private int											oldRows;
+	private int											newRows;
+
+	/**
+	 * @param oldFile
+	 * @param newFile
+	 */
+	public SnapshotDiff(File oldFile, File newFile) {
+		this.oldFile = oldFile;
+		this.newFile = newFile;
+	}
+
+	/**
+	 * Compares the files
+	 *
+	 * @return this
+	 * @throws IOException
+	 */
+	public SnapshotDiff run() throws IOException {
+		// the old file's row hashes by row key, in its order
+		LinkedHashMap<String, Long> oldHashes = new LinkedHashMap<String, Long>();
+		ArrayList<String> oldColumns;
+		try (CSVReader reader = new CSVReader(oldFile.toPath())) {
+			oldColumns = reader.getColumns();
+			int name = getNameColumn(oldColumns, oldFile);
+			HashMap<String, Integer> occurrences = new HashMap<String, Integer>();
+			ArrayList<String> row;
+			while ((row = reader.readRow()) != null) {
+				oldHashes.put(getKey(row.get(name), occurrences), hash(oldColumns, row));
+				oldRows++;
+			}
+		}
+
+		// compare each new row's hash to the old row's with its key, keeping the values of the rows that differ
+		LinkedHashMap<String, String[]> changedRows = new LinkedHashMap<String, String[]>();
+		try (CSVReader reader = new CSVReader(newFile.toPath())) {
+			ArrayList<String> newColumns = reader.getColumns();
+			int name = getNameColumn(newColumns, newFile);
+			columns = new ArrayList<String>(oldColumns);
+			HashSet<String> oldColumnSet = new HashSet<String>(oldColumns);
+			HashSet<String> newColumnSet = new HashSet<String>(newColumns);
+			for (String column : newColumns) {
+				if (!oldColumnSet.contains(column)) {
+					addedColumns.add(column);
+					columns.add(column);
+				}
+			}
+			for (String column : oldColumns) {
+				if (!newColumnSet.contains(column)) removedColumns.add(column);
+			}
+			// where each column of the union is in the new file, or -1 if it isn't
+			int[] newPositions = getPositions(newColumns);
+
+			HashMap<String, Integer> occurrences = new HashMap<String, Integer>();
+			ArrayList<String> row;
+			String key;
+			Long oldHash;
+			String[] values;
+			while ((row = reader.readRow()) != null) {
+				newRows++;
+				key = getKey(row.get(name), occurrences);
+				oldHash = oldHashes.remove(key);
+				if (oldHash == null) {
+					added.add(row.get(name));
+				} else if (oldHash != hash(newColumns, row)) {
+					values = new String[columns.size()];
+					for (int c = 0; c < values.length; c++) {
+						values[c] = newPositions[c] == -1 ? BLANK : row.get(newPositions[c]);
+					}
+					changedRows.put(key, values);
+				}
+			}
+		}
+
+		// whatever old rows weren't matched were removed
+		for (String key : oldHashes.keySet()) {
+			removed.add(key.substring(0, key.lastIndexOf('\0')));
+		}
+		oldHashes = null;
+
+		// read the old file again for the rows that changed, and find which of their cells did
+		if (!changedRows.isEmpty()) {
+			HashMap<String, List<String[]>> cellsByKey = new HashMap<String, List<String[]>>();
+			try (CSVReader reader = new CSVReader(oldFile.toPath())) {
+				int name = getNameColumn(oldColumns, oldFile);
+				int[] oldPositions = getPositions(oldColumns);
+				HashMap<String, Integer> occurrences = new HashMap<String, Integer>();
+				ArrayList<String> row;
+				String key, oldValue;
+				String[] values;
+				List<String[]> cells;
+				while ((row = reader.readRow()) != null) {
+					key = getKey(row.get(name), occurrences);
+					values = changedRows.get(key);
+					if (values == null) continue;
+					cells = new ArrayList<String[]>();
+					for (int c = 0; c < values.length; c++) {
+						oldValue = oldPositions[c] == -1 ? BLANK : row.get(oldPositions[c]);
+						if (isBlank(oldValue) ? !isBlank(values[c]) : !oldValue.equals(values[c])) {
+							cells.add(new String[] { columns.get(c), oldValue, values[c] });
+						}
+					}
+					if (!cells.isEmpty()) cellsByKey.put(key, cells);
+				}
+			}
+			// in the new file's order
+			for (String key : changedRows.keySet()) {
+				if (cellsByKey.containsKey(key)) changed.put(key, cellsByKey.get(key));
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Returns where each column of the union is in a file with the columns, or -1 if it isn't
+	 *
+	 * @param fileColumns
+	 * @return
+	 */
+	private int[] getPositions(ArrayList<String> fileColumns) {
+		int[] positions = new int[columns.size()];
+		for (int c = 0; c < positions.length; c++) {
+			positions[c] = fileColumns.indexOf(columns.get(c));
+		}
+		return positions;
+	}
+
+	/**
+	 * Returns where the Name column is, ending the diff if there isn't one
+	 *
+	 * @param columns
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	private static int getNameColumn(ArrayList<String> columns, File file) throws IOException {
+		int name = columns.indexOf("Name");
+		if (name == -1) throw new IOException(file + " has no Name column!");
+		return name;
+	}
+
+	/**
+	 * Returns a row's key: its Name, and how many rows before it had the same Name, so institutions with the same name are matched in
+	 * order
+	 *
+	 * @param name
+	 * @param occurrences
+	 * @return
+	 */
+	private static String getKey(String name, HashMap<String, Integer> occurrences) {
+		Integer count = occurrences.get(name);
+		occurrences.put(name, count == null ? 1 : count + 1);
+		return name + '\0' + (count == null ? 0 : count);
+	}
+
+	/**
+	 * Returns whether a cell is empty or blank, which are the same
+	 *
+	 * @param value
+	 * @return
+	 */
+	private static boolean isBlank(String value) {
+		return value.isEmpty() || value.equals(BLANK);
+	}
+
+	/**
+	 * Returns a 64-bit hash of a row: the sum of a hash of each non-blank cell with its header, so it is the same whatever order the
+	 * columns are in, and a column a file doesn't have is the same as a blank one
+	 *
+	 * @param headers
+	 * @param row
+	 * @return
+	 */
+	private static long hash(ArrayList<String> headers, ArrayList<String> row) {
+		long sum = 0;
+		for (int c = 0; c < headers.size(); c++) {
+			if (!isBlank(row.get(c))) sum += hash(headers.get(c), row.get(c));
+		}
+		return sum;
+	}
+
+	/**
+	 * Returns a 64-bit hash of a cell and its header, mixed so that the sum of a row's cells spreads over every bit
+	 *
+	 * @param header
+	 * @param value
+	 * @return
+	 */
+	private static long hash(String header, String value) {
+		long h = 0xCBF29CE484222325L;
+		for (int i = 0; i < header.length(); i++) {
+			h = (h ^ header.charAt(i)) * 0x100000001B3L;
+		}
+		// a separator, so a header and value can't run together
+		h *= 0x100000001B3L;
+		for (int i = 0; i < value.length(); i++) {
+			h = (h ^ value.charAt(i)) * 0x100000001B3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * @return the names of the institutions only in the new file
+	 */
+	public ArrayList<String> getAdded() {
+		return added;
+	}
+
+	/**
+	 * @return the names of the institutions only in the old file
+	 */
+	public ArrayList<String> getRemoved() {
+		return removed;
+	}
+
+	/**
+	 * @return the number of cells that changed
+	 */
+	public int getChangedCellCount() {
+		int count = 0;
+		for (List<String[]> cells : changed.values()) {
+			count += cells.size();
+		}
+		return count;
+	}
+
+	/**
+	 * Prints the changes: added and removed columns and institutions, then each changed cell with its old and new value
+	 *
+	 * @param out
+	 */
+	public void print(PrintStream out) {
+		out.println("--- " + oldFile + " (" + oldRows + " rows)");
+		out.println("+++ " + newFile + " (" + newRows + " rows)");
+		for (String column : removedColumns) {
+			out.println("- column " + column);
+		}
+		for (String column : addedColumns) {
+			out.println("+ column " + column);
+		}
+		for (String name : removed) {
+			out.println("- " + name);
+		}
+		for (String name : added) {
+			out.println("+ " + name);
+		}
+		for (Map.Entry<String, List<String[]>> row : changed.entrySet()) {
+			String name = row.getKey().substring(0, row.getKey().lastIndexOf('\0'));
+			out.println("~ " + name);
+			for (String[] cell : row.getValue()) {
+				out.println("\t" + cell[0] + ": \"" + cell[1] + "\" -> \"" + cell[2] + "\"");
+			}
+		}
+		out.println(removed.size() + " removed, " + added.size() + " added, " + changed.size() + " changed ("
+				+ getChangedCellCount() + " cells)");
+	}
+
+	/**
+	 * Compares two CSV files, or the two newest CSV files in a state's csv folder
+	 *
+	 * @param args
+	 *            the old and new file, or a state's folder like ./NC/
+	 */
+	public static void main(String[] args) {
+		File oldFile = null, newFile = null;
+		if (args.length == 2) {
+			oldFile = new File(args[0]);
+			newFile = new File(args[1]);
+		} else if (args.length == 1) {
+			ArrayList<File> snapshots = CSVReader.getSnapshots(args[0] + "/csv/");
+			if (snapshots.size() < 2) {
+				System.err.println(args[0] + " doesn't have two CSV files to compare!");
+				System.exit(1);
+			}
+			oldFile = snapshots.get(snapshots.size() - 2);
+			newFile = snapshots.get(snapshots.size() - 1);
+		} else {
+			System.err.println("Usage: SnapshotDiff <old.csv> <new.csv> | SnapshotDiff <state folder>");
+			System.exit(1);
+		}
+		try {
+			new SnapshotDiff(oldFile, newFile).run().print(System.out);
+		} catch (IOException ioe) {
+			System.err.println("File " + oldFile + " or " + newFile + " couldn't be read!");
+			ioe.printStackTrace();
+			System.exit(1);
+		}
+	}
+}
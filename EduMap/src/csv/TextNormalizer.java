@@ -0,0 +1,274 @@
+package csv;
+
+/**
+ * Removes the formatting left in infobox text in one scan: line breaks, HTML entities, unwanted characters and Wikipedia citation
+ * markers. The output is exactly what replacing each of them in turn used to give, including the cases where one replacement creates
+ * text that a later one matches, such as "&amp;lt;" becoming "<", or "[2[1]]" disappearing entirely
+ *
+ * @author Jeremy Gilreath
+ *
+ */
+public class TextNormalizer {
+	private static final byte		COPY				= 0;
+	private static final byte		SKIP				= 1;
+	private static final byte		REMOVE				= 2;
+	private static final byte		ENTITY_END			= 3;
+	private static final byte		CITATION_END		= 4;
+	private static final byte		APOSTROPHE			= 5;
+	private static final byte		DASH				= 6;
+
+	private static final byte[]		ACTIONS				= new byte[Character.MAX_VALUE + 1];
+
+	// the entities in the order they used to be replaced, each of which only matches text that was there by the time it was its turn
+	private static final String[]	ENTITY_NAMES		= { "nbsp", "amp", "quot", "sup2", "deg", "frac12", "gt", "lt",
+			"oacute", "AElig", "eacute", "reg", "ograve", "iacute" };
+	private static final char[]		ENTITY_VALUES		= { ' ', '&', '"', '2', (char) 176, (char) 189, '>', '<', (char) 243,
+			(char) 198, (char) 233, (char) 174, (char) 242, (char) 237 };
+	private static final int		MAX_ENTITY_NAME		= 6;
+
+	// likewise for citations: [1] through [30] come first, in order, then these
+	private static final String[]	CITATIONS			= { "citation needed", "dead link", "update", "" };
+	private static final int		FIRST_CITATION		= 31;
+	private static final int		MAX_CITATION		= 30;
+	private static final int		MAX_CITATION_TEXT	= 15;
+
+	static {
+		ACTIONS['\n'] = SKIP;
+		ACTIONS['\r'] = SKIP;
+		ACTIONS[';'] = ENTITY_END;
+		ACTIONS[']'] = CITATION_END;
+		ACTIONS['?'] = APOSTROPHE;
+		ACTIONS['>'] = REMOVE;
+		ACTIONS[65533] = REMOVE;
+		ACTIONS[9608] = REMOVE;
+		ACTIONS[8226] = REMOVE;
+		ACTIONS[8212] = DASH;
+	}
+
+	/**
+	 * Removes the formatting from the whole string
+	 * 
+	 * @param text
+	 * @return
+	 */
+	public static String removeFormatting(String text) {
+		return removeFormatting(text, 0, text.length());
+	}
+
+	/**
+	 * Removes the formatting from part of the text, and trims the result
+	 * 
+	 * @param text
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	public static String removeFormatting(CharSequence text, int start, int end) {
+		return normalize(text, start, end, false);
+	}
+
+	/**
+	 * Removes the formatting from the text of part of some HTML, keeping each '>' and what follows it up to the next '<', and trims the
+	 * result. This gives the same result as extracting that text first, without building it
+	 * 
+	 * @param html
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	public static String removeFormattingOutsideTags(CharSequence html, int start, int end) {
+		return normalize(html, start, end, true);
+	}
+
+	/**
+	 * @param text
+	 * @param start
+	 * @param end
+	 * @param outsideTags
+	 * @return
+	 */
+	private static String normalize(CharSequence text, int start, int end, boolean outsideTags) {
+		int length = end - start;
+		char[] out = new char[length];
+		// the order of the entity that produced each character of the output, or 0 if it was in the text
+		byte[] madeBy = new byte[length];
+		// the highest order of any citation removed at each position of the output
+		byte[] removedAt = new byte[length + 1];
+		// entities can't span a removed character, so they must start at or after this position of the output
+		int barrier = 0;
+		int count = 0;
+		boolean copying = !outsideTags;
+		char c;
+		for (int i = start; i < end; i++) {
+			c = text.charAt(i);
+			if (outsideTags) {
+				if (c == '>') copying = true;
+				if (c == '<') copying = false;
+			}
+			if (!copying) continue;
+			switch (ACTIONS[c]) {
+				case SKIP:
+					break;
+				case REMOVE:
+					barrier = count;
+					break;
+				case APOSTROPHE:
+					madeBy[count] = 0;
+					out[count++] = '\'';
+					break;
+				case DASH:
+					madeBy[count] = 0;
+					out[count++] = '-';
+					break;
+				case ENTITY_END:
+					count = decodeEntity(out, madeBy, count, barrier);
+					if (count < 0) {
+						// a '>' was decoded, and is removed just like any other
+						count = -count - 1;
+						barrier = count;
+					}
+					break;
+				case CITATION_END:
+					int removed = removeCitation(out, removedAt, count);
+					if (removed != count) {
+						count = removed;
+						barrier = count;
+					} else {
+						madeBy[count] = 0;
+						out[count++] = c;
+					}
+					break;
+				default:
+					madeBy[count] = 0;
+					out[count++] = c;
+			}
+		}
+
+		int first = 0;
+		while (first < count && out[first] <= ' ')
+			first++;
+		while (count > first && out[count - 1] <= ' ')
+			count--;
+		return new String(out, first, count - first);
+	}
+
+	/**
+	 * Decodes the entity that the ';' just read ends, if there is one and it could have been replaced in its turn, or else appends the
+	 * ';'. Returns the new length of the output, or, if the entity decoded to a '>', minus one more than the length without it
+	 * 
+	 * @param out
+	 * @param madeBy
+	 * @param count
+	 * @param barrier
+	 * @return
+	 */
+	private static int decodeEntity(char[] out, byte[] madeBy, int count, int barrier) {
+		int amp = count - 1;
+		char c;
+		while (amp >= barrier && count - amp <= MAX_ENTITY_NAME + 1) {
+			c = out[amp];
+			if (c == '&') break;
+			if (!(c >= 'a' && c <= 'z') && !(c >= 'A' && c <= 'Z') && !(c >= '0' && c <= '9')) return append(out, madeBy,
+					count, ';');
+			amp--;
+		}
+		if (amp < barrier || out[amp] != '&') return append(out, madeBy, count, ';');
+
+		int nameLength = count - amp - 1;
+		for (int order = 1; order <= ENTITY_NAMES.length; order++) {
+			String name = ENTITY_NAMES[order - 1];
+			if (name.length() != nameLength || !matches(out, amp + 1, name)) continue;
+			// everything in the entity has to have been there before its turn came
+			for (int i = amp; i < count; i++) {
+				if (madeBy[i] >= order) return append(out, madeBy, count, ';');
+			}
+			char value = ENTITY_VALUES[order - 1];
+			if (value == '>') return -amp - 1;
+			madeBy[amp] = (byte) order;
+			out[amp] = value;
+			return amp + 1;
+		}
+		return append(out, madeBy, count, ';');
+	}
+
+	/**
+	 * Removes the citation that the ']' just read ends, if there is one and it could have been removed in its turn. Returns the new
+	 * length of the output, which is unchanged if nothing was removed
+	 * 
+	 * @param out
+	 * @param removedAt
+	 * @param count
+	 * @return
+	 */
+	private static int removeCitation(char[] out, byte[] removedAt, int count) {
+		int open = count - 1;
+		while (open >= 0 && count - open - 1 <= MAX_CITATION_TEXT && out[open] != '[' && out[open] != ']')
+			open--;
+		if (open < 0 || out[open] != '[') return count;
+
+		int order = citationOrder(out, open + 1, count);
+		if (order == 0) return count;
+		// a citation made by removing another one inside it only goes if its turn came after the one inside
+		for (int i = open + 1; i <= count; i++) {
+			if (removedAt[i] >= order) return count;
+		}
+		for (int i = open + 1; i <= count; i++) {
+			removedAt[i] = 0;
+		}
+		if (removedAt[open] < order) removedAt[open] = (byte) order;
+		return open;
+	}
+
+	/**
+	 * Returns the order the citation text between the brackets used to be removed in, or 0 if it isn't a citation
+	 * 
+	 * @param out
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	private static int citationOrder(char[] out, int start, int end) {
+		int length = end - start;
+		if (length == 1 || length == 2) {
+			int number = 0;
+			for (int i = start; i < end; i++) {
+				if (out[i] < '0' || out[i] > '9') {
+					number = -1;
+					break;
+				}
+				number = number * 10 + out[i] - '0';
+			}
+			if (number > 0 && number <= MAX_CITATION && out[start] != '0') return number;
+		}
+		for (int i = 0; i < CITATIONS.length; i++) {
+			if (CITATIONS[i].length() == length && matches(out, start, CITATIONS[i])) return FIRST_CITATION + i;
+		}
+		return 0;
+	}
+
+	/**
+	 * @param out
+	 * @param start
+	 * @param s
+	 * @return whether the output has the string at the start position
+	 */
+	private static boolean matches(char[] out, int start, String s) {
+		for (int i = 0; i < s.length(); i++) {
+			if (out[start + i] != s.charAt(i)) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @param out
+	 * @param madeBy
+	 * @param count
+	 * @param c
+	 * @return
+	 */
+	private static int append(char[] out, byte[] madeBy, int count, char c) {
+		madeBy[count] = 0;
+		out[count] = c;
+		return count + 1;
+	}
+}
@@ -2,23 +2,47 @@ package csv;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
+import java.io.FilterWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
-import java.io.PrintStream;
 import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import javax.swing.JOptionPane;
 
+import org.jsoup.Connection;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
@@ -30,8 +54,35 @@ import org.jsoup.nodes.Node;
  */
 public class Util {
 
-	private static final Charset	CHARSET		= StandardCharsets.UTF_16;
-	private static final String		ENCODING	= "UTF-16";
+	private static final Charset	CHARSET					= StandardCharsets.UTF_16;
+	private static final String		ENCODING				= "UTF-16";
+	private static final String		ETAG					= "ETag";
+	private static final String		LAST_MODIFIED			= "Last-Modified";
+	private static final String		COMPRESSED_EXTENSION	= ".html.gz";
+	private static final int		BUFFER_SIZE				= 64 * 1024;
+	private static final String[]	MAGAZINES				= { "College and university rankings", "National", "Forbes",
+			"U.S._News_%26_World_Report", "Global", "Washington Monthly", "ARWU", "QS", "Times", "Bloomberg" };
+
+	private static boolean			usingPackedStore;
+	// what the CSV and debug files are written in. Cached documents are always read and written as before
+	private static Charset			outputCharset			= CHARSET;
+
+	// a permit for each network request that may be in flight at once, resized in place so a permit always goes back where it came from
+	private static final RequestLimit	requests	= new RequestLimit();
+	private static int					maxRequests	= Integer.MAX_VALUE;
+
+	private static final AtomicLong	compressedWrites		= new AtomicLong();
+	private static final AtomicLong	compressedWriteBytes	= new AtomicLong();
+	private static final AtomicLong	utf16WriteBytes			= new AtomicLong();
+	private static final AtomicLong	compressedReads			= new AtomicLong();
+	private static final AtomicLong	compressedReadBytes		= new AtomicLong();
+	private static final AtomicLong	compressedReadNanos		= new AtomicLong();
+	private static final AtomicLong	legacyReads				= new AtomicLong();
+	private static final AtomicLong	legacyReadBytes			= new AtomicLong();
+	private static final AtomicLong	legacyReadNanos			= new AtomicLong();
+	private static final AtomicLong	migratedDocs			= new AtomicLong();
+	private static final AtomicLong	migratedLegacyBytes		= new AtomicLong();
+	private static final AtomicLong	migratedCompressedBytes	= new AtomicLong();
 
 	/**
 	 * Make the folders on disk if they do not already exist
@@ -43,7 +94,8 @@ public class Util {
 			File folder = new File(path);
 			if (!folder.exists()) {
 				boolean successful = (folder).mkdirs();
-				if (!successful) {
+				// another thread may have created the same folder in the meantime
+				if (!successful && !folder.isDirectory()) {
 					JOptionPane.showMessageDialog(null, "ERROR", "Directory Creation Failed.",
 							JOptionPane.WARNING_MESSAGE);
 					System.exit(1);
@@ -53,116 +105,729 @@ public class Util {
 	}
 
 	/**
-	 * Search for and remove duplicate elements in an ArrayList<Element> based on the provided attribute
+	 * A semaphore whose number of permits can be lowered without waiting for the ones in use to be returned
+	 */
+	private static class RequestLimit extends Semaphore {
+		private static final long	serialVersionUID	= 5360529327411385384L;
+
+		private RequestLimit() {
+			super(Integer.MAX_VALUE, true);
+		}
+
+		/**
+		 * @param reduction
+		 */
+		private void reduce(int reduction) {
+			reducePermits(reduction);
+		}
+	}
+
+	/**
+	 * Sets the maximum number of network requests (page fetches and DNS lookups) that may be in flight at once. The limit is changed in
+	 * place, so requests in flight return their permits to it, and lowering it only holds back new requests until enough of them have
+	 * finished
+	 * 
+	 * @param maxRequests
+	 */
+	public static void setMaxRequests(int maxRequests) {
+		synchronized (requests) {
+			if (maxRequests > Util.maxRequests) {
+				requests.release(maxRequests - Util.maxRequests);
+			} else if (maxRequests < Util.maxRequests) {
+				requests.reduce(Util.maxRequests - maxRequests);
+			}
+			Util.maxRequests = maxRequests;
+		}
+	}
+
+	/**
+	 * Waits for a network request permit, returning false if the thread was interrupted while waiting
+	 * 
+	 * @return
+	 */
+	public static boolean acquireRequest() {
+		try {
+			requests.acquire();
+			return true;
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Returns a network request permit taken by acquireRequest
+	 */
+	public static void releaseRequest() {
+		requests.release();
+	}
+
+	/**
+	 * Returns an executor that starts a new virtual thread for every task. Virtual threads need a Java 21 runtime, so older runtimes fall
+	 * back to a new platform thread per task
+	 * 
+	 * @return
+	 */
+	public static ExecutorService newVirtualThreadExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException roe) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	/**
+	 * Search for and remove duplicate elements in an ArrayList<Element> based on the provided attribute. An element is a duplicate if
+	 * an element kept before it has the same attribute value or the same text, so the first one always wins. Each element's attribute
+	 * and text are computed once and checked against the sets of those already kept
 	 * 
 	 * @param dupedElements
 	 * @param attribute
 	 * @return
 	 */
 	public static ArrayList<Element> removeDuplicates(ArrayList<Element> dupedElements, String attribute) {
-		boolean duplicate;
 		ArrayList<Element> elements = new ArrayList<Element>();
+		HashSet<String> keptAttributes = new HashSet<String>(dupedElements.size() * 2);
+		HashSet<String> keptTexts = new HashSet<String>(dupedElements.size() * 2);
+		String value, text;
 		for (Element candidate : dupedElements) {
-			duplicate = false;
-			for (Element e : elements) {
-				if (e.attr(attribute).equals(candidate.attr(attribute)) || e.text().equals(candidate.text())) {
-					duplicate = true;
-					break;
-				}
+			value = candidate.attr(attribute);
+			text = candidate.text();
+			if (!keptAttributes.contains(value) && !keptTexts.contains(text)) {
+				keptAttributes.add(value);
+				keptTexts.add(text);
+				elements.add(candidate);
 			}
-			if (!duplicate) elements.add(candidate);
 		}
+		System.out.println("\n----- Removed " + (dupedElements.size() - elements.size()) + " duplicates of "
+				+ dupedElements.size() + " elements");
 		return elements;
 	}
 
 	/**
-	 * Determines whether to get a Jsoup document from on file or the Internet
+	 * Determines whether to get a Jsoup document from on file or the Internet. With an incremental refresh, documents on file are
+	 * revalidated with a conditional request and only downloaded again if they changed
 	 * 
 	 * @param docFilePath
 	 * @param documentURL
 	 * @return
 	 */
 	public static Document getDocument(String docFilePath, String documentURL, boolean writingDoc,
-			boolean fetchOnlineUpdate, boolean fetchOnlineOnly) {
+			boolean fetchOnlineUpdate, boolean fetchOnlineOnly, boolean fetchIncremental) {
 		Document doc = null;
-		File f = new File(docFilePath);
 		if (fetchOnlineOnly) {
-			doc = Util.getDocumentURL(documentURL);
-			if (writingDoc && doc != null) {
-				Util.writeDoc(doc, docFilePath);
-			}
+			doc = Util.getDocumentURL(documentURL, docFilePath, writingDoc);
 		} else {
-			if (f.exists() && !f.isDirectory()) {
-				doc = Util.getDocumentFile(f);
-			} else if (fetchOnlineUpdate) {
-				doc = Util.getDocumentURL(documentURL);
-				if (writingDoc && doc != null) {
-					Util.writeDoc(doc, docFilePath);
-				}
+			if (isCached(docFilePath)) {
+				doc = fetchIncremental ? Util.refreshDocument(documentURL, docFilePath, writingDoc) : Util
+						.getCachedDocument(docFilePath);
+			} else if (fetchOnlineUpdate || fetchIncremental) {
+				doc = Util.getDocumentURL(documentURL, docFilePath, writingDoc);
 			}
 		}
 		return doc;
 	}
 
 	/**
-	 * Create a Jsoup document from the given URL
+	 * Sets whether documents are cached in a packed store per state rather than as a file per document
+	 * 
+	 * @param packed
+	 */
+	public static void setUsingPackedStore(boolean packed) {
+		usingPackedStore = packed;
+	}
+
+	/**
+	 * Sets the charset the CSV and debug files are written in
+	 * 
+	 * @param charset
+	 */
+	public static void setOutputCharset(Charset charset) {
+		outputCharset = charset;
+	}
+
+	/**
+	 * @return the charset the CSV and debug files are written in
+	 */
+	public static Charset getOutputCharset() {
+		return outputCharset;
+	}
+
+	/**
+	 * Checks to see if the document is cached. With a packed store, this is an index lookup, and a document still cached as a file is moved
+	 * into the store the first time it is found
+	 * 
+	 * @param docFilePath
+	 * @return
+	 */
+	public static boolean isCached(String docFilePath) {
+		if (usingPackedStore) {
+			PackedStore store = getStore(docFilePath);
+			String key = getStoreKey(docFilePath);
+			if (store.contains(key)) return true;
+
+			File f = getCachedFile(docFilePath);
+			if (f.exists() && f.getName().endsWith(COMPRESSED_EXTENSION)) {
+				try {
+					store.put(key, Files.readAllBytes(f.toPath()));
+				} catch (IOException ioe) {
+					System.err.println("Couldn't move " + f + " into the packed store! Using it as is...");
+					return true;
+				}
+				if (!f.delete()) System.err.println("\tCouldn't delete " + f + "!");
+				return true;
+			}
+			return f.exists() && !f.isDirectory();
+		}
+		File f = getCachedFile(docFilePath);
+		return f.exists() && !f.isDirectory();
+	}
+
+	/**
+	 * Returns a CRC-32 of the cached bytes of a document, so anything derived from it can tell whether it has changed since
+	 * 
+	 * @param docFilePath
+	 * @return
+	 */
+	public static long hashCachedDocument(String docFilePath) {
+		CRC32 crc = new CRC32();
+		if (usingPackedStore) {
+			ByteBuffer entry = getStore(docFilePath).get(getStoreKey(docFilePath));
+			if (entry != null) {
+				crc.update(entry);
+				return crc.getValue();
+			}
+		}
+		File f = getCachedFile(docFilePath);
+		try {
+			crc.update(Files.readAllBytes(f.toPath()));
+		} catch (IOException ioe) {
+			System.err.println("Couldn't read " + f + "!");
+			ioe.printStackTrace();
+			System.exit(1);
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * Create a Jsoup document from wherever it is cached
+	 * 
+	 * @param docFilePath
+	 * @return
+	 */
+	private static Document getCachedDocument(String docFilePath) {
+		if (usingPackedStore) {
+			PackedStore store = getStore(docFilePath);
+			String key = getStoreKey(docFilePath);
+			if (store.contains(key)) return getDocumentPacked(store, key);
+		}
+		return getDocumentFile(getCachedFile(docFilePath));
+	}
+
+	/**
+	 * Opens a stream of the characters of a cached document, inflating it from wherever it is cached, so it can be read without parsing
+	 * all of it
+	 * 
+	 * @param docFilePath
+	 * @return
+	 * @throws IOException
+	 */
+	public static Reader openCachedDocument(String docFilePath) throws IOException {
+		if (usingPackedStore) {
+			ByteBuffer entry = getStore(docFilePath).get(getStoreKey(docFilePath));
+			if (entry != null) return new InputStreamReader(new GZIPInputStream(new PackedStore.BufferStream(entry), BUFFER_SIZE),
+					StandardCharsets.UTF_8);
+		}
+		File f = getCachedFile(docFilePath);
+		if (f.getName().endsWith(COMPRESSED_EXTENSION)) return new InputStreamReader(new GZIPInputStream(new FileInputStream(f),
+				BUFFER_SIZE), StandardCharsets.UTF_8);
+		return new InputStreamReader(new FileInputStream(f), CHARSET);
+	}
+
+	/**
+	 * Returns the packed store of the state the document belongs to, which sits in the folder above its docs folder
+	 * 
+	 * @param docFilePath
+	 * @return
+	 */
+	private static PackedStore getStore(String docFilePath) {
+		return PackedStore.open(new File(docFilePath).getParentFile().getParent() + "/");
+	}
+
+	/**
+	 * Returns the key of a document in its packed store, which is its folder and name without an extension, e.g. docs/Duke University
+	 * 
+	 * @param docFilePath
+	 * @return
+	 */
+	private static String getStoreKey(String docFilePath) {
+		File f = new File(docFilePath);
+		String name = f.getName();
+		int extension = name.lastIndexOf('.');
+		return f.getParentFile().getName() + "/" + (extension == -1 ? name : name.substring(0, extension));
+	}
+
+	/**
+	 * Create a Jsoup document from the given URL, writing it and its validators to file if desired
 	 * 
 	 * @param url
+	 * @param docFilePath
+	 * @param writingDoc
 	 * @return
 	 */
-	private static Document getDocumentURL(String url) {
+	private static Document getDocumentURL(String url, String docFilePath, boolean writingDoc) {
 		Document doc = null;
 		System.out.println("\n====================== Connecting to " + url + "!");
+		Connection.Response response = fetch(url, null);
+		if (response != null) {
+			try {
+				doc = response.parse();
+				doc.outputSettings().charset(CHARSET);
+			} catch (IOException ioe) {
+				System.err.println("\tCouldn't create a document from " + url + "! Moving on...");
+			}
+		}
+		System.out.print(doc == null ? "\tDocument online is null!" : "\tDocument online is good!");
+		if (writingDoc && doc != null) {
+			Util.writeDoc(doc, docFilePath);
+			Util.writeValidators(response, docFilePath);
+		}
+		return doc;
+	}
+
+	/**
+	 * Revalidates a document on file with a conditional request using its stored ETag/Last-Modified validators. A document without them,
+	 * cached before they were stored or while documents weren't written, is revalidated by when its file was last written. A 304 response
+	 * reuses the file as is, without downloading or writing it again
+	 * 
+	 * @param url
+	 * @param docFilePath
+	 * @param writingDoc
+	 * @return
+	 */
+	private static Document refreshDocument(String url, String docFilePath, boolean writingDoc) {
+		Properties validators = readValidators(docFilePath);
+		if (validators.isEmpty()) {
+			long cachedTime = getCachedTime(docFilePath);
+			if (cachedTime == 0) return getDocumentURL(url, docFilePath, writingDoc);
+			validators.setProperty(LAST_MODIFIED, toHTTPDate(cachedTime));
+		}
+
+		System.out.println("\n====================== Revalidating " + url + "!");
+		Connection.Response response = fetch(url, validators);
+		if (response == null || response.statusCode() == 304) {
+			if (response != null) System.out.print("\tDocument on file is current!");
+			return getCachedDocument(docFilePath);
+		}
+
+		Document doc = null;
 		try {
-			doc = Jsoup.connect(url).followRedirects(true).get();
+			doc = response.parse();
 			doc.outputSettings().charset(CHARSET);
+		} catch (IOException ioe) {
+			System.err.println("\tCouldn't create a document from " + url + "! Using the file instead...");
+			return getCachedDocument(docFilePath);
+		}
+		System.out.print("\tDocument online has changed!");
+		if (writingDoc) {
+			Util.writeDoc(doc, docFilePath);
+			Util.writeValidators(response, docFilePath);
+		}
+		return doc;
+	}
+
+	/**
+	 * Performs a GET for the URL, made conditional if validators are given. Returns null if the request failed or came back with an
+	 * error
+	 * 
+	 * @param url
+	 * @param validators
+	 * @return
+	 */
+	private static Connection.Response fetch(String url, Properties validators) {
+		if (!acquireRequest()) {
+			System.err.println("\tInterrupted before connecting to " + url + "! Moving on...");
+			return null;
+		}
+		Connection.Response response = null;
+		try {
+			Connection connection = Jsoup.connect(url).followRedirects(true).ignoreHttpErrors(true);
+			if (validators != null) {
+				if (validators.getProperty(ETAG) != null) connection.header("If-None-Match", validators.getProperty(ETAG));
+				if (validators.getProperty(LAST_MODIFIED) != null) connection.header("If-Modified-Since",
+						validators.getProperty(LAST_MODIFIED));
+			}
+			response = connection.execute();
+			if (response.statusCode() != 200 && response.statusCode() != 304) {
+				System.err.println("\tCouldn't create a document from " + url + " (" + response.statusCode()
+						+ ")! Moving on...");
+				response = null;
+			}
 		} catch (IOException ioe) {
 			System.err.println("\tCouldn't create a document from " + url + "! Moving on...");
 			// ioe.printStackTrace();
 			// System.exit(1);
+		} finally {
+			releaseRequest();
 		}
-		System.out.print(doc == null ? "\tDocument online is null!" : "\tDocument online is good!");
-		return doc;
+		return response;
+	}
+
+	/**
+	 * Returns when the file caching a document was last written, or 0 if that isn't known. Entries of a packed store don't keep the time
+	 * they were written, and the store's own time is that of its newest entry, which would claim older entries are newer than they are
+	 * 
+	 * @param docFilePath
+	 * @return
+	 */
+	private static long getCachedTime(String docFilePath) {
+		if (usingPackedStore && getStore(docFilePath).contains(getStoreKey(docFilePath))) return 0;
+		return getCachedFile(docFilePath).lastModified();
+	}
+
+	/**
+	 * Formats a time the way HTTP headers have dates, which is always in English and GMT
+	 * 
+	 * @param time
+	 * @return
+	 */
+	private static String toHTTPDate(long time) {
+		return DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).format(
+				Instant.ofEpochMilli(time).atZone(ZoneOffset.UTC));
 	}
 
 	/**
-	 * Create a Jsoup document from the given file
+	 * Returns the path of the file holding the validators for a document on file
+	 * 
+	 * @param docFilePath
+	 * @return
+	 */
+	private static String getValidatorPath(String docFilePath) {
+		int extension = docFilePath.lastIndexOf('.');
+		return (extension > docFilePath.lastIndexOf('/') ? docFilePath.substring(0, extension) : docFilePath) + ".val";
+	}
+
+	/**
+	 * Reads the ETag/Last-Modified validators stored next to a document, which are empty if there are none
+	 * 
+	 * @param docFilePath
+	 * @return
+	 */
+	private static Properties readValidators(String docFilePath) {
+		Properties validators = new Properties();
+		File f = new File(getValidatorPath(docFilePath));
+		if (f.exists()) {
+			try (BufferedReader reader = Files.newBufferedReader(f.toPath(), StandardCharsets.UTF_8)) {
+				validators.load(reader);
+			} catch (IOException ioe) {
+				System.err.println("Couldn't read the validators in " + f + "! Fetching the whole document...");
+				validators.clear();
+			}
+		}
+		return validators;
+	}
+
+	/**
+	 * Stores the ETag/Last-Modified validators of a response next to its document, if the server sent any
+	 * 
+	 * @param response
+	 * @param docFilePath
+	 */
+	private static void writeValidators(Connection.Response response, String docFilePath) {
+		Properties validators = new Properties();
+		if (response.header(ETAG) != null) validators.setProperty(ETAG, response.header(ETAG));
+		if (response.header(LAST_MODIFIED) != null) validators.setProperty(LAST_MODIFIED, response.header(LAST_MODIFIED));
+
+		File f = new File(getValidatorPath(docFilePath));
+		if (validators.isEmpty()) {
+			// stale validators would make the next refresh trust a file that no longer matches them
+			if (f.exists()) f.delete();
+			return;
+		}
+		try (BufferedWriter writer = Files.newBufferedWriter(f.toPath(), StandardCharsets.UTF_8)) {
+			validators.store(writer, docFilePath);
+		} catch (IOException ioe) {
+			System.err.println("File " + f + " couldn't be read/written to!");
+			ioe.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Returns the compressed file that caches the document, first migrating an older UTF-16 .txt cache of it if there is one
+	 * 
+	 * @param docFilePath
+	 * @return
+	 */
+	private static File getCachedFile(String docFilePath) {
+		File compressed = new File(getCompressedPath(docFilePath));
+		File legacy = new File(docFilePath);
+		if (!compressed.exists() && legacy.exists() && !legacy.isDirectory()) {
+			if (!migrateDoc(legacy, compressed)) return legacy;
+		}
+		return compressed;
+	}
+
+	/**
+	 * Returns the path of the compressed UTF-8 file that caches a document
+	 * 
+	 * @param docFilePath
+	 * @return
+	 */
+	private static String getCompressedPath(String docFilePath) {
+		int extension = docFilePath.lastIndexOf('.');
+		return (extension > docFilePath.lastIndexOf('/') ? docFilePath.substring(0, extension) : docFilePath)
+				+ COMPRESSED_EXTENSION;
+	}
+
+	/**
+	 * Create a Jsoup document from the given file, inflating compressed files straight into the parser
 	 * 
 	 * @param onDisk
 	 * @return
 	 */
 	private static Document getDocumentFile(File onDisk) {
 		Document doc = null;
+		boolean compressed = onDisk.getName().endsWith(COMPRESSED_EXTENSION);
 		System.out.println("\n====================== Fetching file " + onDisk + "!");
+		long start = System.nanoTime();
 		try {
-			doc = Jsoup.parse(onDisk, ENCODING);
+			if (compressed) {
+				try (InputStream in = new GZIPInputStream(new FileInputStream(onDisk), BUFFER_SIZE)) {
+					doc = Jsoup.parse(in, "UTF-8", onDisk.getAbsolutePath());
+				}
+			} else {
+				doc = Jsoup.parse(onDisk, ENCODING);
+			}
 		} catch (IOException ioe) {
 			System.err.println("Couldn't create a document from " + onDisk + "!");
 			ioe.printStackTrace();
 			System.exit(1);
 		}
+		if (compressed) {
+			compressedReads.incrementAndGet();
+			compressedReadBytes.addAndGet(onDisk.length());
+			compressedReadNanos.addAndGet(System.nanoTime() - start);
+		} else {
+			legacyReads.incrementAndGet();
+			legacyReadBytes.addAndGet(onDisk.length());
+			legacyReadNanos.addAndGet(System.nanoTime() - start);
+		}
 		System.out.print(doc == null ? "\tDocument on file is null!" : "\tDocument on file is good!");
 		return doc;
 	}
 
 	/**
-	 * Write a Jsoup document to file to be easily read
+	 * Create a Jsoup document from a packed store, inflating its entry straight from the mapped data file into the parser
 	 * 
-	 * @param doc
-	 * @param fileName
+	 * @param store
+	 * @param key
+	 * @return
 	 */
-	private static void writeDoc(Document doc, String fileName) {
-		System.out.println("\nWriting " + fileName + "...");
-		try (OutputStreamWriter docStream = new OutputStreamWriter(new PrintStream(fileName), CHARSET)) {
-			docStream.append(doc.toString());
+	private static Document getDocumentPacked(PackedStore store, String key) {
+		Document doc = null;
+		System.out.println("\n====================== Fetching packed " + key + "!");
+		long start = System.nanoTime();
+		ByteBuffer entry = store.get(key);
+		try (InputStream in = new GZIPInputStream(new PackedStore.BufferStream(entry), BUFFER_SIZE)) {
+			doc = Jsoup.parse(in, "UTF-8", key);
 		} catch (IOException ioe) {
-			System.err.println("\n\tCouldn't print to file " + fileName + "!");
+			System.err.println("Couldn't create a document from " + key + "!");
 			ioe.printStackTrace();
 			System.exit(1);
 		}
+		compressedReads.incrementAndGet();
+		compressedReadBytes.addAndGet(entry.capacity());
+		compressedReadNanos.addAndGet(System.nanoTime() - start);
+		System.out.print(doc == null ? "\tDocument on file is null!" : "\tDocument on file is good!");
+		return doc;
+	}
+
+	/**
+	 * Counts the chars written through it
+	 */
+	private static class CountingWriter extends FilterWriter {
+		private long	count;
+
+		/**
+		 * @param out
+		 */
+		private CountingWriter(Writer out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int c) throws IOException {
+			super.write(c);
+			count++;
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len) throws IOException {
+			super.write(cbuf, off, len);
+			count += len;
+		}
+
+		@Override
+		public void write(String str, int off, int len) throws IOException {
+			super.write(str, off, len);
+			count += len;
+		}
+	}
+
+	/**
+	 * Moves a fully written temporary file to its final name in one step, so a crash never leaves a partly written file there
+	 * 
+	 * @param temp
+	 * @param target
+	 * @throws IOException
+	 */
+	private static void moveIntoPlace(File temp, File target) throws IOException {
+		Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Write a Jsoup document to file as compressed UTF-8, counting the chars of its HTML as they go through the compressor. The file is
+	 * written under a temporary name and moved into place once it is complete. With a packed store, the compressed bytes are appended to
+	 * the store instead
+	 * 
+	 * @param doc
+	 * @param docFilePath
+	 */
+	private static void writeDoc(Document doc, String docFilePath) {
+		String fileName = usingPackedStore ? getStoreKey(docFilePath) : getCompressedPath(docFilePath);
+		System.out.println("\nWriting " + fileName + "...");
+		long chars = 0;
+		long written;
+		if (usingPackedStore) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(BUFFER_SIZE);
+			try (CountingWriter docStream = new CountingWriter(new OutputStreamWriter(new GZIPOutputStream(bytes, BUFFER_SIZE),
+					StandardCharsets.UTF_8))) {
+				docStream.write(doc.outerHtml());
+				chars = docStream.count;
+			} catch (IOException ioe) {
+				System.err.println("\n\tCouldn't compress " + fileName + "!");
+				ioe.printStackTrace();
+				System.exit(1);
+			}
+			getStore(docFilePath).put(fileName, bytes.toByteArray());
+			written = bytes.size();
+		} else {
+			File temp = new File(fileName + ".tmp");
+			try (CountingWriter docStream = new CountingWriter(new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(
+					new FileOutputStream(temp), BUFFER_SIZE), StandardCharsets.UTF_8), BUFFER_SIZE))) {
+				docStream.write(doc.outerHtml());
+				chars = docStream.count;
+			} catch (IOException ioe) {
+				System.err.println("\n\tCouldn't print to file " + fileName + "!");
+				ioe.printStackTrace();
+				System.exit(1);
+			}
+			try {
+				moveIntoPlace(temp, new File(fileName));
+			} catch (IOException ioe) {
+				System.err.println("\n\tCouldn't move " + temp + " to " + fileName + "!");
+				ioe.printStackTrace();
+				System.exit(1);
+			}
+			written = new File(fileName).length();
+		}
+		compressedWrites.incrementAndGet();
+		compressedWriteBytes.addAndGet(written);
+		// what the same page took up as a UTF-16 .txt file: a byte order mark and two bytes per char
+		utf16WriteBytes.addAndGet(2 + 2 * chars);
 		System.out.println("\t" + fileName + " was written!");
 	}
 
+	/**
+	 * Converts an older UTF-16 .txt cache of a document into the compressed UTF-8 format, streaming the characters across to a temporary
+	 * file that is moved into place once it is complete, and deletes the old file once the new one is there
+	 * 
+	 * @param legacy
+	 * @param compressed
+	 * @return
+	 */
+	private static boolean migrateDoc(File legacy, File compressed) {
+		System.out.println("\nMigrating " + legacy + " to " + compressed + "...");
+		char[] buffer = new char[BUFFER_SIZE];
+		int read;
+		File temp = new File(compressed.getPath() + ".tmp");
+		try (Reader in = Files.newBufferedReader(legacy.toPath(), CHARSET);
+				Writer out = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(temp), BUFFER_SIZE),
+						StandardCharsets.UTF_8)) {
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+		} catch (IOException ioe) {
+			System.err.println("\tCouldn't migrate " + legacy + "! Using it as is...");
+			temp.delete();
+			return false;
+		}
+		try {
+			moveIntoPlace(temp, compressed);
+		} catch (IOException ioe) {
+			System.err.println("\tCouldn't move " + temp + " to " + compressed + "! Using " + legacy + " as is...");
+			temp.delete();
+			return false;
+		}
+		// the document is as old as the file it came from, which is what it is revalidated by
+		compressed.setLastModified(legacy.lastModified());
+		migratedDocs.incrementAndGet();
+		migratedLegacyBytes.addAndGet(legacy.length());
+		migratedCompressedBytes.addAndGet(compressed.length());
+		if (!legacy.delete()) System.err.println("\tCouldn't delete " + legacy + "!");
+		return true;
+	}
+
+	/**
+	 * Prints how much disk space and read time the compressed document cache has used compared to UTF-16 .txt files
+	 */
+	public static void printCacheStats() {
+		System.out.println("\n====================== Document cache:");
+		if (compressedWrites.get() > 0) {
+			System.out.println("\t" + compressedWrites + " documents written: " + toKB(compressedWriteBytes.get())
+					+ " compressed vs " + toKB(utf16WriteBytes.get()) + " as UTF-16 text ("
+					+ percentSaved(compressedWriteBytes.get(), utf16WriteBytes.get()) + " saved)");
+		}
+		if (migratedDocs.get() > 0) {
+			System.out.println("\t" + migratedDocs + " documents migrated: " + toKB(migratedLegacyBytes.get())
+					+ " as UTF-16 text became " + toKB(migratedCompressedBytes.get()) + " compressed ("
+					+ percentSaved(migratedCompressedBytes.get(), migratedLegacyBytes.get()) + " saved)");
+		}
+		if (compressedReads.get() > 0) {
+			System.out.println("\t" + compressedReads + " compressed documents read: " + toKB(compressedReadBytes.get())
+					+ " in " + compressedReadNanos.get() / 1000000 + " ms (" + compressedReadNanos.get() / 1000
+					/ compressedReads.get() + " us each)");
+		}
+		if (legacyReads.get() > 0) {
+			System.out.println("\t" + legacyReads + " UTF-16 documents read: " + toKB(legacyReadBytes.get()) + " in "
+					+ legacyReadNanos.get() / 1000000 + " ms (" + legacyReadNanos.get() / 1000 / legacyReads.get()
+					+ " us each)");
+		}
+	}
+
+	/**
+	 * Formats a number of bytes in kilobytes
+	 * 
+	 * @param bytes
+	 * @return
+	 */
+	private static String toKB(long bytes) {
+		return (bytes / 1024) + " KB";
+	}
+
+	/**
+	 * Formats how much smaller the new size is than the old size
+	 * 
+	 * @param newSize
+	 * @param oldSize
+	 * @return
+	 */
+	private static String percentSaved(long newSize, long oldSize) {
+		return (oldSize == 0 ? 0 : 100 - (100 * newSize / oldSize)) + "%";
+	}
+
 	/**
 	 * Check to see if any of the URLs are to missing Wikipedia pages
 	 * 
@@ -202,7 +867,8 @@ public class Util {
 	}
 
 	/**
-	 * Returns the first Element containing the desired attribute class from a Document
+	 * Returns the last Element whose class attribute is exactly the desired attribute class from a Document, in a single walk over it.
+	 * When several lookups share one Document, index it once and use getElement(ElementIndex, String) instead
 	 * 
 	 * @param doc
 	 * @param attributeClass
@@ -218,6 +884,17 @@ public class Util {
 		return infoElem;
 	}
 
+	/**
+	 * Returns the last Element whose class attribute is exactly the desired attribute class, from a Document that was already indexed
+	 * 
+	 * @param index
+	 * @param attributeClass
+	 * @return
+	 */
+	public static Element getElement(ElementIndex index, String attributeClass) {
+		return index.getLastByClassAttribute(attributeClass);
+	}
+
 	/**
 	 * Write the attributes and text of a Jsoup element to file to be easily read
 	 * 
@@ -227,7 +904,7 @@ public class Util {
 	public static void writeElement(Element e, String fileName) {
 		Path path = Paths.get(fileName);
 		System.out.println("\n\tElement is good!" + "\nWriting " + fileName + "...");
-		try (BufferedWriter writer = Files.newBufferedWriter(path, CHARSET)) {
+		try (BufferedWriter writer = Files.newBufferedWriter(path, outputCharset)) {
 			writer.write("Element " + e + ":");
 			writer.newLine();
 			writer.write("\tAttributes:");
@@ -255,7 +932,7 @@ public class Util {
 	public static void writeElements(ArrayList<Element> elements, String fileName) {
 		Path path = Paths.get(fileName);
 		System.out.println("\n\tElements are good!" + "\nWriting " + fileName + "...");
-		try (BufferedWriter writer = Files.newBufferedWriter(path, CHARSET)) {
+		try (BufferedWriter writer = Files.newBufferedWriter(path, outputCharset)) {
 			for (Element e : elements) {
 				writer.write("Element " + e + ":");
 				writer.newLine();
@@ -377,7 +1054,7 @@ public class Util {
 	public static void writeNode(Node n, String fileName) {
 		Path path = Paths.get(fileName);
 		System.out.print("\tNode is good!" + "\nWriting " + fileName + "...");
-		try (BufferedWriter writer = Files.newBufferedWriter(path, CHARSET)) {
+		try (BufferedWriter writer = Files.newBufferedWriter(path, outputCharset)) {
 			writer.write("Node 0:");
 			writer.write("" + n);
 			writer.newLine();
@@ -402,7 +1079,7 @@ public class Util {
 	public static void writeNodes(ArrayList<Node> nodes, String fileName) {
 		Path path = Paths.get(fileName);
 		System.out.print("\tNodes are good!" + "\nWriting " + fileName + "...");
-		try (BufferedWriter writer = Files.newBufferedWriter(path, CHARSET)) {
+		try (BufferedWriter writer = Files.newBufferedWriter(path, outputCharset)) {
 			int count = 0;
 			for (Node n : nodes) {
 				writer.write("Node " + String.format("%02d", count++) + ":");
@@ -421,48 +1098,6 @@ public class Util {
 		System.out.println("\n\t" + fileName + " was written!");
 	}
 
-	/**
-	 * Splits a String into an array of Strings based on a delimiter
-	 * 
-	 * @param text
-	 * @param delimiter
-	 * @param ending
-	 * @return
-	 */
-	public static ArrayList<String> splitCategories(String text, String delimiter, String ending) {
-		String[] info = text.split(delimiter);
-		ArrayList<String> infoArray = new ArrayList<String>();
-		int endIndex;
-		for (String s : info) {
-			endIndex = s.indexOf(ending);
-			if (endIndex != -1) infoArray.add(s.substring(0, endIndex));
-		}
-		infoArray.trimToSize();
-		return infoArray;
-	}
-
-	/**
-	 * Splits an ArrayList<String> into a new String[] based on beginning and ending indices for each element
-	 * 
-	 * @param rows
-	 * @param beginning
-	 * @param ending
-	 * @return
-	 */
-	public static String[] splitRows(ArrayList<String> rows, String beginning, String ending) {
-		String row;
-		String[] splitRows = new String[rows.size()];
-		for (int i = 0; i < rows.size(); i++) {
-			row = rows.get(i);
-			if (row.contains(beginning)) {
-				splitRows[i] = row.substring(row.indexOf(beginning), row.indexOf(ending) + ending.length());
-			} else {
-				splitRows[i] = null;
-			}
-		}
-		return splitRows;
-	}
-
 	/**
 	 * Prints out data within a specific HTML tag from an Array of text rows
 	 * 
@@ -516,7 +1151,7 @@ public class Util {
 	public static void writeRows(String[] rows, String fileName, String type) {
 		Path path = Paths.get(fileName);
 		System.out.print("\t" + type + "s are good!" + "\nWriting " + fileName + "...");
-		try (BufferedWriter writer = Files.newBufferedWriter(path, CHARSET)) {
+		try (BufferedWriter writer = Files.newBufferedWriter(path, outputCharset)) {
 			for (int i = 0; i < rows.length; i++) {
 				writer.write(type + " " + String.format("%02d", i) + ":\t" + rows[i]);
 				writer.newLine();
@@ -539,7 +1174,7 @@ public class Util {
 	public static void writeRows(ArrayList<String> rows, String fileName, String type) {
 		Path path = Paths.get(fileName);
 		System.out.print("\t" + type + "s are good!" + "\nWriting " + fileName + "...");
-		try (BufferedWriter writer = Files.newBufferedWriter(path, CHARSET)) {
+		try (BufferedWriter writer = Files.newBufferedWriter(path, outputCharset)) {
 			for (int i = 0; i < rows.size(); i++) {
 				writer.write(type + " " + String.format("%02d", i) + ":\t" + rows.get(i));
 				writer.newLine();
@@ -553,43 +1188,40 @@ public class Util {
 	}
 
 	/**
-	 * Reformats the rows to contain only relevant text
+	 * Reformats the header or value of each row of an infobox to contain only relevant text. Each is read straight out of the infobox's
+	 * HTML, removing its tags and formatting in one scan
 	 * 
-	 * @param rows
+	 * @param tokens
+	 * @param cell
 	 * @param firstLineName
+	 * @param isHeader
+	 * @return
 	 */
-	public static void reformat(String[] rows, String firstLineName, boolean isHeader) {
+	public static String[] reformat(InfoboxTokenizer tokens, int cell, String firstLineName, boolean isHeader) {
+		String html = tokens.getText();
+		String[] rows = new String[tokens.getRowCount()];
 		String line;
+		int start, end;
 		for (int i = 0; i < rows.length; i++) {
-			line = rows[i];
 			// The first part is always the institution name
 			if (i == 0) {
 				line = firstLineName;
 				// The others have extraneous tags and formatting to remove
 			} else {
 				// if the line isn't null
-				if (line != null) {
+				if (tokens.hasCell(i, cell)) {
+					start = tokens.getStart(i, cell);
+					end = tokens.getEnd(i, cell);
 					// If the line is a magazine, remove it
-					if (isHeader
-							&& (line.contains("College and university rankings") || line.contains("National")
-									|| line.contains("Forbes") || line.contains("U.S._News_%26_World_Report")
-									|| line.contains("Global") || line.contains("Washington Monthly")
-									|| line.contains("ARWU") || line.contains("QS") || line.contains("Times") || line
-										.contains("Bloomberg"))) {
+					if (isHeader && isMagazine(html, start, end)) {
 						line = null;
 						// Otherwise, it contains useful data
 					} else {
-						line = extractFromTags(line);
-						line = removeFormatting(line, false);
+						line = TextNormalizer.removeFormattingOutsideTags(html, start, end);
 						if (line.isEmpty()) {
 							line = null;
-						} else {
-							if (isHeader) {
-								line = fixHeaders(line);
-							} else {
-								line = fixValues(line);
-							}
-							line.trim();
+						} else if (isHeader) {
+							line = fixHeaders(line);
 							// if the line is empty or several other useless values, may as well make it null
 							if (line.equals("N/A") || line.equals("not available") || line.equals("~")
 									|| line.isEmpty()) {
@@ -599,82 +1231,45 @@ public class Util {
 								line = removeBoundaryCharacters(line, true);
 								line = removeBoundaryCharacters(line, false);
 							}
+						} else {
+							// values go through the same steps, with the common ones remembered
+							line = ValueNormalizer.normalize(line);
 						}
 					}
+				} else {
+					line = null;
 				}
 			}
 			rows[i] = line;
 		}
+		return rows;
 	}
 
 	/**
-	 * Performs formatting for future CSV columns
+	 * Checks to see if part of the HTML names a magazine's ranking rather than the institution's data
 	 * 
-	 * @param line
+	 * @param html
+	 * @param start
+	 * @param end
 	 * @return
 	 */
-	private static String fixHeaders(String line) {
-		// capitalize the first letter of each word
-		if (line.contains(" ") || line.contains("-")) line = capitalize(line);
-		// combine formation, founded, and opened with established
-		if (line.equals("Formation") || line.equals("Founded") || line.equals("Opened")) line = "Established";
-		// combine area and coordinates
-		if (line.equals("Area")) line = "Coordinates";
-		// combine budget and endowment
-		if (line.equals("Budget")) line = "Endowment";
-		// combine slogan and all non-English mottos
-		if (line.equals("Slogan") || (line.contains("Motto") && !line.contains("English"))) line = "Motto";
-		// combine Parent School and Parent Institution
-		if (line.equals("Parent School")) line = "Parent Institution";
-		// combine permutations of (Campus) Location(s) and Town Or City
-		if (line.equals("Town Or City") || line.contains("Location")) line = "Locations";
-		// combine permutations of color/colour(s)
-		if (line.contains("Color") || line.contains("Colour")) line = "Colors";
-		// combine permutations of (School) Type
-		if (line.contains("Type")) line = "Type";
-		// combine permutations of Student(/-)Faculty Ratio
-		if (line.contains("Faculty Ratio")) line = "Sudent-Faculty Ratio";
-		// combine permutations of (Sports) Mascot
-		if (line.contains("Mascot")) line = "Mascot";
-		// combine permutations of (Official) Website
-		if (line.contains("Website")) line = "Website";
-		// combine permutations of (Religious) Affiliation(s), but separately
-		if (line.contains("Affiliation")) line = (line.contains("Religious") ? "Religious " : "") + "Affiliations";
-		// combine permutations of Vice(-/ )President(s)
-		if (line.contains("Vice") && line.contains("President")) line = "Vice President";
-		// combine permutations of Former Name(s)
-		if (line.contains("Former Name")) line = "Former Names";
-		// combine permutations of Founder(s)
-		if (line.contains("Founder")) line = "Founders";
-		return line;
-	}
-
-	/**
-	 * Performs formatting for future CSV values
+	private static boolean isMagazine(String html, int start, int end) {
+		int index;
+		for (String magazine : MAGAZINES) {
+			index = html.indexOf(magazine, start);
+			if (index != -1 && index + magazine.length() <= end) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Performs formatting for future CSV columns, combining the different names of the same header
 	 * 
 	 * @param line
 	 * @return
 	 */
-	private static String fixValues(String line) {
-		// replace multiple whitespace characters with a single space
-		line = line.replaceAll("\\s+", " ");
-		// if it contains m2/km2, superscript the 2
-		if (line.contains("m2")) line = line.replaceAll("m2", "m" + String.valueOf((char) 178));
-		// if the line didn't insert a space between 'US' and "$", or did insert a space after "$"
-		if (line.contains("$")) line = line.replaceAll("US\\$", "US \\$").replaceAll("\\$ ", "\\$");
-		// if it contains GPS coordinates, remove them
-		if (line.contains("Coordinates:")) line = removeAfterFirst(line, "Coordinates:");
-		if (line.contains(String.valueOf((char) 176))) line = removeAfterFirst(line, String.valueOf((char) 176));
-		// if the line contains a space, fix improper punctuation
-		if (line.contains(" ")) {
-			line = line.replaceAll(" \\+", "+").replaceAll("\\( ", "(").replaceAll(" \\)", ")").replaceAll(" ,", ",");
-			// and if the line contains poorly formatted date data for the 'established' header, fix that too
-			if (line.contains(" days ago)")) line = removeAfterLast(line, "(");
-		}
-		// if the line contains an underscore but is not a URL, make it a space
-		if (!(line.contains("http") || line.contains("www.") || line.contains(".edu"))) line = line
-				.replaceAll("_", " ");
-		return line;
+	private static String fixHeaders(String line) {
+		return HeaderRules.canonicalize(line);
 	}
 
 	/**
@@ -692,30 +1287,6 @@ public class Util {
 		return alphabetized;
 	}
 
-	/**
-	 * Capitalizes the first letter in every word contained in a String
-	 * 
-	 * @param line
-	 */
-	private static String capitalize(String line) {
-		char[] lineArray = line.toCharArray();
-		StringBuilder newHeader = new StringBuilder();
-
-		boolean capNext = false;
-		for (int i = 0; i < lineArray.length; i++) {
-			if (i == 0 || capNext) {
-				newHeader.append(String.valueOf(lineArray[i]).toUpperCase());
-				capNext = false;
-			} else {
-				if (lineArray[i] == ' ' || lineArray[i] == '-') {
-					capNext = true;
-				}
-				newHeader.append(String.valueOf(lineArray[i]));
-			}
-		}
-		return newHeader.toString();
-	}
-
 	/**
 	 * Removes any remaining unnecessary characters from the end of a String
 	 * 
@@ -723,39 +1294,7 @@ public class Util {
 	 * @return
 	 */
 	public static String removeBoundaryCharacters(String line, boolean fromTheEnd) {
-		if (line != null) {
-			boolean keepChecking = true;
-			int position;
-			while (keepChecking && line != null) {
-				position = fromTheEnd ? line.length() - 1 : 0;
-				if (line.charAt(position) == ',' || line.charAt(position) == ';' || line.charAt(position) == ':'
-						|| line.charAt(position) == '-' || line.charAt(position) == ' '
-						|| line.charAt(position) == '\\' || line.charAt(position) == '/'
-						|| line.charAt(position) == (char) 134 || line.charAt(position) == (char) 8224) {
-					if (line.length() == 1) {
-						line = null;
-					} else {
-						line.trim();
-						line = fromTheEnd ? line.substring(0, position) : line.substring(1);
-						line.trim();
-					}
-				} else {
-					keepChecking = false;
-				}
-			}
-		}
-		return line;
-	}
-
-	/**
-	 * Returns a substring of the original line without anything after the first index of the passed sequence
-	 * 
-	 * @param line
-	 * @param toRemove
-	 * @return
-	 */
-	private static String removeAfterFirst(String line, String toRemove) {
-		return line.substring(0, line.indexOf(toRemove));
+		return ValueNormalizer.removeBoundaryCharacters(line, fromTheEnd);
 	}
 
 	/**
@@ -770,40 +1309,16 @@ public class Util {
 	}
 
 	/**
-	 * Replaces HTML/Wikipedia-specific characters and formatting with actual UTF-16 values
+	 * Replaces HTML/Wikipedia-specific characters and formatting with actual UTF-16 values, in a single scan of the text
 	 * 
 	 * @param info
 	 * @return
 	 */
 	private static String removeFormatting(String info, boolean printEachStep) {
-		if (printEachStep) System.out.println("After Formatting Step 00: " + info);
-		String formatted = info.replaceAll(String.valueOf("\n"), "").replaceAll(String.valueOf("\r"), "");
-		if (printEachStep) System.out.println("After Formatting Step 01: " + formatted);
-		// if it contains HTML-specific characters, replace them with their actual UTF-16 values
-		if (formatted.contains("&")) formatted = formatted.replaceAll("&nbsp;", " ").replaceAll("&amp;", "&")
-				.replaceAll("&quot;", "\"").replaceAll("&sup2;", "2").replaceAll("&deg;", String.valueOf((char) 176))
-				.replaceAll("&frac12;", String.valueOf((char) 189)).replaceAll("&gt;", ">").replaceAll("&lt;", "<")
-				.replaceAll("&oacute;", String.valueOf((char) 243)).replaceAll("&AElig;", String.valueOf((char) 198))
-				.replaceAll("&eacute;", String.valueOf((char) 233)).replaceAll("&reg;", String.valueOf((char) 174))
-				.replaceAll("&ograve;", String.valueOf((char) 242)).replaceAll("&iacute;", String.valueOf((char) 237));
-		if (printEachStep) System.out.println("After Formatting Step 02: " + formatted);
-		// remove several undesirable UTF-16 characters
-		formatted = formatted.replaceAll("\\" + String.valueOf((char) 63), "'")
-				.replaceAll(String.valueOf((char) 65533), "").replaceAll(String.valueOf((char) 9608), "")
-				.replaceAll(String.valueOf((char) 8226), "").replaceAll(">", "")
-				.replaceAll(String.valueOf((char) 8212), "-");
-		if (printEachStep) System.out.println("After Formatting Step 03: " + formatted);
-		// if the string contains an open bracket, remove wikipedia-specific formatting
-		if (formatted.contains("[")) {
-			// System.out.println("It contains a bracket!");
-			for (int i = 1; i < 31; i++) {
-				formatted = formatted.replaceAll("\\[" + i + "]", "");
-			}
-			formatted = formatted.replaceAll("\\[citation needed]", "").replaceAll("\\[dead link]", "")
-					.replaceAll("\\[update]", "").replaceAll("\\[]", "");
-		}
-		if (printEachStep) System.out.println("After Formatting Step 04: " + formatted);
-		return formatted.trim();
+		if (printEachStep) System.out.println("Before Formatting: " + info);
+		String formatted = TextNormalizer.removeFormatting(info);
+		if (printEachStep) System.out.println("After Formatting: " + formatted);
+		return formatted;
 	}
 
 	/**
@@ -821,26 +1336,6 @@ public class Util {
 		}
 	}
 
-	/**
-	 * Returns all text placed within HTML tags
-	 * 
-	 * @param row
-	 * @return
-	 */
-	private static String extractFromTags(String row) {
-		boolean copying = false;
-		String extracted = "";
-		for (char c : row.toCharArray()) {
-			if (c == '>') copying = true;
-			if (c == '<') copying = false;
-
-			if (copying) {
-				extracted += c;
-			}
-		}
-		return extracted;
-	}
-
 	/**
 	 * Turns an ArrayList<String> into a comma-delimited String
 	 * 
@@ -849,9 +1344,21 @@ public class Util {
 	 */
 	public static String arrayListToString(ArrayList<String> list) {
 		StringBuilder sb = new StringBuilder();
+		String value;
+		char c;
 		for (int v = 0; v < list.size(); v++) {
-			if (v != 0) sb.append(",");
-			sb.append("\"" + list.get(v).replaceAll("\"", "''") + "\"");
+			if (v != 0) sb.append(',');
+			value = list.get(v);
+			sb.append('"');
+			for (int i = 0; i < value.length(); i++) {
+				c = value.charAt(i);
+				if (c == '"') {
+					sb.append("''");
+				} else {
+					sb.append(c);
+				}
+			}
+			sb.append('"');
 		}
 		return sb.toString();
 	}
@@ -877,7 +1384,7 @@ public class Util {
 		Path path = Paths.get(fileName);
 		System.out.print("\n\t" + title + (title.substring(title.length() - 2).equals("ss") ? " is" : " are")
 				+ " good!\nWriting " + fileName + "...");
-		try (BufferedWriter writer = Files.newBufferedWriter(path, CHARSET)) {
+		try (BufferedWriter writer = Files.newBufferedWriter(path, outputCharset)) {
 			writer.write(data);
 		} catch (IOException ioe) {
 			System.err.println("File " + fileName + " couldn't be read/written to!");
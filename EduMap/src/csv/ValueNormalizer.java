@@ -0,0 +1,257 @@
+package csv;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Formats infobox values for CSV cells in one scan of each value, working in a char array instead of running a regular expression per
+ * fix. The output is exactly what the replacements used to give. Values like "Public" and "Suburban" come back for most institutions, so
+ * formatted values are remembered in a cache that is emptied whenever it fills
+ *
+ * @author Jeremy Gilreath
+ *
+ */
+public class ValueNormalizer {
+	private static final int								MAX_CACHED	= 64 * 1024;
+	// stands in for values that format to nothing, since the cache can't hold null
+	private static final String								NO_VALUE	= new String();
+
+	private static final String								COORDINATES	= "Coordinates:";
+	private static final String								DAYS_AGO	= " days ago)";
+	private static final char								DEGREE		= (char) 176;
+	private static final char								SQUARED		= (char) 178;
+
+	private static final ConcurrentHashMap<String, String>	cache		= new ConcurrentHashMap<String, String>();
+	private static final AtomicLong							hits		= new AtomicLong();
+	private static final AtomicLong							misses		= new AtomicLong();
+	private static final AtomicLong							missNanos	= new AtomicLong();
+	private static final AtomicLong							evictions	= new AtomicLong();
+
+	/**
+	 * Formats a value for a CSV cell, or returns null if nothing useful is left of it
+	 *
+	 * @param value
+	 * @return
+	 */
+	public static String normalize(String value) {
+		String formatted = cache.get(value);
+		if (formatted != null) {
+			hits.incrementAndGet();
+			return formatted == NO_VALUE ? null : formatted;
+		}
+		long start = System.nanoTime();
+		formatted = fixValue(value);
+		// if the value is empty or several other useless values, may as well make it null
+		if (formatted.equals("N/A") || formatted.equals("not available") || formatted.equals("~") || formatted.isEmpty()) {
+			formatted = null;
+		} else {
+			// remove unnecessary characters from the beginning and end of the value
+			formatted = removeBoundaryCharacters(formatted, true);
+			formatted = removeBoundaryCharacters(formatted, false);
+		}
+		if (cache.size() >= MAX_CACHED) {
+			// the common values come straight back, while the one-offs that filled it are gone
+			cache.clear();
+			evictions.incrementAndGet();
+		}
+		cache.put(value, formatted == null ? NO_VALUE : formatted);
+		misses.incrementAndGet();
+		missNanos.addAndGet(System.nanoTime() - start);
+		return formatted;
+	}
+
+	/**
+	 * Collapses whitespace, superscripts square units, fixes the spacing of dollar signs, drops GPS coordinates, fixes the spacing of
+	 * punctuation and poorly formatted dates, and turns underscores into spaces unless the value is a URL
+	 *
+	 * @param value
+	 * @return
+	 */
+	static String fixValue(String value) {
+		int length = value.length();
+		// "US$" becomes "US $", so the output can be longer than the value by one for every '$'
+		char[] out = new char[length + count(value, '$')];
+		int count = 0;
+		boolean spaced = false, inWhitespace = false, skippingSpace = false;
+		char c;
+		for (int i = 0; i < length; i++) {
+			c = value.charAt(i);
+			if (c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r') {
+				// a run of whitespace becomes one space, unless it follows a '$'
+				if (inWhitespace || skippingSpace) continue;
+				inWhitespace = true;
+				spaced = true;
+				out[count++] = ' ';
+				continue;
+			}
+			inWhitespace = false;
+			skippingSpace = false;
+			if (c == DEGREE) break;
+			if (c == '2' && count > 0 && out[count - 1] == 'm') {
+				c = SQUARED;
+			} else if (c == '$') {
+				if (count > 1 && out[count - 2] == 'U' && out[count - 1] == 'S') out[count++] = ' ';
+				skippingSpace = true;
+			} else if (c == ':' && endsWith(out, count, COORDINATES)) {
+				count -= COORDINATES.length() - 1;
+				break;
+			}
+			out[count++] = c;
+		}
+		// a space that was cut off with the coordinates doesn't count
+		if (spaced) spaced = indexOf(out, count, ' ') != -1;
+
+		if (spaced) {
+			count = replacePair(out, count, ' ', '+', '+');
+			count = replacePair(out, count, '(', ' ', '(');
+			count = replacePair(out, count, ' ', ')', ')');
+			count = replacePair(out, count, ' ', ',', ',');
+			// the " days ago)" is cut off from its '(', and without one the value is left as it is
+			if (indexOf(out, count, DAYS_AGO) != -1) {
+				int open = lastIndexOf(out, count, '(');
+				if (open != -1) count = open;
+			}
+		}
+		if (indexOf(out, count, "http") == -1 && indexOf(out, count, "www.") == -1 && indexOf(out, count, ".edu") == -1) {
+			for (int i = 0; i < count; i++) {
+				if (out[i] == '_') out[i] = ' ';
+			}
+		}
+		return new String(out, 0, count);
+	}
+
+	/**
+	 * Removes any remaining unnecessary characters from the end, or the beginning, of a String. Returns null if nothing else is left
+	 *
+	 * @param line
+	 * @param fromTheEnd
+	 * @return
+	 */
+	public static String removeBoundaryCharacters(String line, boolean fromTheEnd) {
+		if (line == null) return null;
+		int start = 0, end = line.length();
+		if (fromTheEnd) {
+			while (end > start && isBoundaryCharacter(line.charAt(end - 1)))
+				end--;
+		} else {
+			while (start < end && isBoundaryCharacter(line.charAt(start)))
+				start++;
+		}
+		if (start == end && !line.isEmpty()) return null;
+		return line.substring(start, end);
+	}
+
+	/**
+	 * @param c
+	 * @return whether the character is left over punctuation rather than part of a value
+	 */
+	private static boolean isBoundaryCharacter(char c) {
+		return c == ',' || c == ';' || c == ':' || c == '-' || c == ' ' || c == '\\' || c == '/' || c == (char) 134
+				|| c == (char) 8224;
+	}
+
+	/**
+	 * Prints how often a value was already known, and how long formatting a new one took
+	 */
+	public static void printStats() {
+		long lookups = hits.get() + misses.get();
+		if (lookups == 0) return;
+		System.out.println("\n====================== Value normalizer:");
+		System.out.println("\t" + lookups + " values formatted, " + hits + " already known (" + hits.get() * 100 / lookups
+				+ "% hit rate)" + (misses.get() > 0 ? ", " + missNanos.get() / 1000 / misses.get() + " us per new value" : "")
+				+ (evictions.get() > 0 ? ", cache emptied " + evictions + " times" : ""));
+	}
+
+	/**
+	 * Replaces every pair of characters, left to right without overlapping, with a single character, in place
+	 *
+	 * @param out
+	 * @param count
+	 * @param first
+	 * @param second
+	 * @param replacement
+	 * @return the new length
+	 */
+	private static int replacePair(char[] out, int count, char first, char second, char replacement) {
+		int written = 0;
+		for (int i = 0; i < count; i++) {
+			if (out[i] == first && i + 1 < count && out[i + 1] == second) {
+				out[written++] = replacement;
+				i++;
+			} else {
+				out[written++] = out[i];
+			}
+		}
+		return written;
+	}
+
+	/**
+	 * @param out
+	 * @param count
+	 * @param s
+	 * @return whether the first count characters end with the string
+	 */
+	private static boolean endsWith(char[] out, int count, String s) {
+		if (count < s.length() - 1) return false;
+		// the last character of s is the one about to be appended
+		for (int i = 0; i < s.length() - 1; i++) {
+			if (out[count - s.length() + 1 + i] != s.charAt(i)) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @param out
+	 * @param count
+	 * @param s
+	 * @return the index of the first s within the first count characters, or -1 if there isn't one
+	 */
+	private static int indexOf(char[] out, int count, String s) {
+		outer: for (int i = 0; i + s.length() <= count; i++) {
+			for (int j = 0; j < s.length(); j++) {
+				if (out[i + j] != s.charAt(j)) continue outer;
+			}
+			return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * @param out
+	 * @param count
+	 * @param c
+	 * @return the index of the first c within the first count characters, or -1 if there isn't one
+	 */
+	private static int indexOf(char[] out, int count, char c) {
+		for (int i = 0; i < count; i++) {
+			if (out[i] == c) return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * @param out
+	 * @param count
+	 * @param c
+	 * @return the index of the last c within the first count characters, or -1 if there isn't one
+	 */
+	private static int lastIndexOf(char[] out, int count, char c) {
+		for (int i = count - 1; i >= 0; i--) {
+			if (out[i] == c) return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * @param s
+	 * @param c
+	 * @return how many times the character appears in the string
+	 */
+	private static int count(String s, char c) {
+		int n = 0;
+		for (int i = 0; i < s.length(); i++) {
+			if (s.charAt(i) == c) n++;
+		}
+		return n;
+	}
+}